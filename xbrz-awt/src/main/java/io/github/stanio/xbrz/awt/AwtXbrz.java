@@ -2,6 +2,7 @@ package io.github.stanio.xbrz.awt;
 
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageFilter;
 import java.awt.image.BufferedImageOp;
@@ -27,6 +28,11 @@ public final class AwtXbrz {
     private static final ColorModel RGB_OPAQUE =
             new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF, 0);
 
+    private static final ColorModel ARGB_PRE =
+            new DirectColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), 32,
+                                 0x00FF0000, 0x0000FF00, 0x000000FF, 0xFF000000,
+                                 true, DataBuffer.TYPE_INT);
+
     private AwtXbrz() { /* no instances */ }
 
     public static BufferedImage scaleImage(ImageData source, int factor) {
@@ -53,37 +59,48 @@ public final class AwtXbrz {
      */
     public static BufferedImage scaleImage(ImageData source, int factor, boolean untrackedData) {
         ImageData target = new ImageData(source, factor);
-        Xbrz xbrz = ScalerPool.getScaler(factor, source.hasAlpha);
-        xbrz.scaleImage(source.pixels, target.pixels, source.width, source.height);
+        Xbrz xbrz = ScalerPool.getScaler(factor, source.scaleAlpha(), source.premultiplied);
+        xbrz.scaleImage(source.pixels, source.offset, source.scanline,
+                        source.width, source.height, target.pixels, 0, target.width);
         return untrackedData ? makeImage(target) : makeTracked(target);
     }
 
     private static BufferedImage makeImage(ImageData data) {
-        return makeImage(data.pixels, data.width, data.height, data.hasAlpha);
+        return makeImage(data.pixels, data.width, data.height, colorModel(data));
     }
 
-    private static BufferedImage makeImage(int[] pixels, int width, int height, boolean hasAlpha) {
+    private static BufferedImage makeImage(int[] pixels, int width, int height, ColorModel colorModel) {
         DataBufferInt dataBuffer = new DataBufferInt(pixels, pixels.length);
-        return makeImage(dataBuffer, width, height, hasAlpha);
+        return makeImage(dataBuffer, width, height, colorModel);
     }
 
-    private static BufferedImage makeImage(DataBuffer dataBuffer, int width, int height, boolean hasAlpha) {
-        ColorModel colorModel = hasAlpha ? ColorModel.getRGBdefault() : RGB_OPAQUE;
+    private static BufferedImage makeImage(DataBuffer dataBuffer, int width, int height, ColorModel colorModel) {
         SampleModel sampleModel = colorModel.createCompatibleSampleModel(width, height);
         WritableRaster raster = Raster.createWritableRaster(sampleModel, dataBuffer, null);
-        return new BufferedImage(colorModel, raster, false, null);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    private static ColorModel colorModel(ImageData data) {
+        return colorModel(data.hasAlpha, data.premultiplied);
+    }
+
+    private static ColorModel colorModel(boolean hasAlpha, boolean premultiplied) {
+        if (!hasAlpha) {
+            return RGB_OPAQUE;
+        }
+        return premultiplied ? ARGB_PRE : ColorModel.getRGBdefault();
     }
 
     private static BufferedImage makeTracked(ImageData source) {
-        return makeTracked(source.pixels, source.width, source.height, source.hasAlpha);
+        return makeTracked(source.pixels, source.width, source.height, colorModel(source));
     }
 
-    private static BufferedImage makeTracked(int[] pixels, int width, int height, boolean hasAlpha) {
+    private static BufferedImage makeTracked(int[] pixels, int width, int height, ColorModel colorModel) {
         DataBufferInt dataBuffer = new DataBufferInt(pixels.length);
         for (int i = 0, len = pixels.length; i < len; i++) {
             dataBuffer.setElem(i, pixels[i]);
         }
-        return makeImage(dataBuffer, width, height, hasAlpha);
+        return makeImage(dataBuffer, width, height, colorModel);
     }
 
     /**
@@ -99,7 +116,9 @@ public final class AwtXbrz {
      */
     static BufferedImage makeTracked(BufferedImage source) {
         int[] pixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
-        return makeTracked(pixels, source.getWidth(), source.getHeight(), source.getColorModel().hasAlpha());
+        ColorModel colorModel = source.getColorModel();
+        return makeTracked(pixels, source.getWidth(), source.getHeight(),
+                           colorModel(colorModel.hasAlpha(), colorModel.isAlphaPremultiplied()));
     }
 
     private static Image makeFiltered(Image base, int factor) {
@@ -10,8 +10,12 @@ import java.awt.image.DataBufferInt;
 import java.awt.image.ImageObserver;
 import java.awt.image.PixelGrabber;
 import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.util.concurrent.atomic.AtomicReference;
 
+import io.github.stanio.xbrz.PixelFormat;
+import io.github.stanio.xbrz.Xbrz;
+
 /**
  * Encapsulates packed image data in a convenient form for input to {@code Xbrz}.
  */
@@ -27,17 +31,39 @@ public final class ImageData {
     public final int width;
     public final int height;
     public final boolean hasAlpha;
+    final boolean premultiplied;
+    final boolean opaqueContent;
     final int[] pixels;
+    final int offset;
+    final int scanline;
 
     ImageData(BufferedImage image) {
         this(image, false);
     }
 
     ImageData(BufferedImage image, boolean untracked) {
+        this(image, untracked, false);
+    }
+
+    /*
+    With premultipliedAlpha, TYPE_INT_ARGB_PRE pixels are taken as is, to be
+    scaled premultiplied; otherwise they are converted to non-premultiplied. */
+    ImageData(BufferedImage image, boolean untracked, boolean premultipliedAlpha) {
         width = image.getWidth();
         height = image.getHeight();
         hasAlpha = image.getColorModel().hasAlpha();
-        pixels = getRGB(image, untracked);
+        premultiplied = premultipliedAlpha && isPackedPremultiplied(image);
+        opaqueContent = !hasAlpha;
+        if (untracked && isDirectRGB(image, premultiplied)) {
+            Raster raster = image.getRaster();
+            pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            offset = dataOffset(raster);
+            scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        } else {
+            pixels = getRGB(image, premultiplied);
+            offset = 0;
+            scanline = width;
+        }
     }
 
     ImageData(PixelGrabber image, boolean transparency) {
@@ -45,33 +71,107 @@ public final class ImageData {
         height = image.getHeight();
         //hasAlpha = image.getColorModel().hasAlpha();
         hasAlpha = transparency;
+        premultiplied = false;
+        opaqueContent = !hasAlpha;
         pixels = (image.getStatus() & ImageObserver.ALLBITS) != 0
                  ? (int[]) image.getPixels()
                  : ANIMATED_PIXELS;
+        offset = 0;
+        scanline = width;
     }
 
     ImageData(ImageData source, int factor) {
         width = source.width * factor;
         height = source.height * factor;
         hasAlpha = source.hasAlpha;
+        premultiplied = source.premultiplied;
+        opaqueContent = source.opaqueContent;
         pixels = new int[targetArraySize(source.width, source.height, factor)];
+        offset = 0;
+        scanline = width;
+    }
+
+    private ImageData(ImageData source, boolean opaqueContent) {
+        width = source.width;
+        height = source.height;
+        hasAlpha = source.hasAlpha;
+        premultiplied = source.premultiplied;
+        this.opaqueContent = opaqueContent;
+        pixels = source.pixels;
+        offset = source.offset;
+        scanline = source.scanline;
     }
 
-    private static int[] getRGB(BufferedImage image, boolean untracked) {
+    private static int[] getRGB(BufferedImage image, boolean premultiplied) {
         int width = image.getWidth();
         int height = image.getHeight();
+        if (premultiplied || isPackedRGB(image)) {
+            return (int[]) image.getRaster().getDataElements(0, 0, width, height, null);
+        }
+        if (isInterleavedRGB(image)) {
+            // Data elements are in color model band order: R, G, B(, A).
+            // Still repacked to ARGB ints, just faster than getRGB()
+            byte[] data = (byte[]) image.getRaster().getDataElements(0, 0, width, height, null);
+            int[] pixels = new int[width * height];
+            PixelFormat format = image.getColorModel().hasAlpha() ? PixelFormat.RGBA
+                                                                  : PixelFormat.RGB;
+            format.toARGB(data, 0, pixels, 0, pixels.length);
+            return pixels;
+        }
+        return image.getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    private static boolean isInterleavedRGB(BufferedImage image) {
+        int imageType = image.getType();
+        return (imageType == BufferedImage.TYPE_4BYTE_ABGR
+                        || imageType == BufferedImage.TYPE_3BYTE_BGR)
+                && image.getColorModel().getColorSpace().isCS_sRGB();
+    }
+
+    private static boolean isPackedRGB(BufferedImage image) {
         int imageType = image.getType();
         ColorSpace colorSpace = image.getColorModel().getColorSpace();
-        if ((imageType == BufferedImage.TYPE_INT_ARGB
+        return (imageType == BufferedImage.TYPE_INT_ARGB
                         || imageType == BufferedImage.TYPE_INT_RGB)
-                && (colorSpace.isCS_sRGB() || colorSpace == CS_LINEAR_RGB)) {
-            Raster raster = image.getRaster();
-            if (untracked && raster.getDataBuffer().getNumBanks() == 1) {
-                return ((DataBufferInt) raster.getDataBuffer()).getData();
-            }
-            return (int[]) raster.getDataElements(0, 0, width, height, null);
-        }
-        return image.getRGB(0, 0, width, height, null, 0, width);
+                && (colorSpace.isCS_sRGB() || colorSpace == CS_LINEAR_RGB);
+    }
+
+    private static boolean isPackedPremultiplied(BufferedImage image) {
+        ColorSpace colorSpace = image.getColorModel().getColorSpace();
+        return image.getType() == BufferedImage.TYPE_INT_ARGB_PRE
+                && (colorSpace.isCS_sRGB() || colorSpace == CS_LINEAR_RGB);
+    }
+
+    /**
+     * Tests whether the pixels of the given image could be accessed directly
+     * from its data buffer, possibly at an offset and with a scanline stride
+     * different from the image width (sub-images).
+     */
+    static boolean isDirectRGB(BufferedImage image) {
+        return isDirectRGB(image, false);
+    }
+
+    /**
+     * Like {@code isDirectRGB(image)}, but for {@code TYPE_INT_ARGB_PRE}
+     * pixels with {@code premultiplied = true}.
+     */
+    static boolean isDirectRGB(BufferedImage image, boolean premultiplied) {
+        Raster raster = image.getRaster();
+        return (premultiplied ? isPackedPremultiplied(image) : isPackedRGB(image))
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getSampleModel() instanceof SinglePixelPackedSampleModel;
+    }
+
+    /**
+     * The index of the top-left raster pixel in the data buffer of
+     * {@linkplain #isDirectRGB(BufferedImage) a direct RGB} image raster.
+     */
+    static int dataOffset(Raster raster) {
+        SinglePixelPackedSampleModel sampleModel =
+                (SinglePixelPackedSampleModel) raster.getSampleModel();
+        return raster.getDataBuffer().getOffset()
+                + sampleModel.getOffset(raster.getMinX() - raster.getSampleModelTranslateX(),
+                                        raster.getMinY() - raster.getSampleModelTranslateY());
     }
 
     /**
@@ -135,4 +235,30 @@ public final class ImageData {
         return pixels == ANIMATED_PIXELS;
     }
 
+    /**
+     * Scans the pixels of an image with alpha channel for fully opaque
+     * content.  If all pixels are opaque, the returned image-data is scaled
+     * by the faster non-alpha scaler, while the scaled image still has an
+     * alpha channel.  Scaled image border pixels may differ slightly from
+     * scaling with alpha, as the image edges are not treated as transparent.
+     *
+     * @return  image-data to scale as opaque if all pixels are opaque,
+     *          or this image-data
+     * @see     Xbrz#isOpaque(int[], int, int, int, int)
+     */
+    public ImageData detectOpaque() {
+        if (opaqueContent || isAnimated()
+                || !Xbrz.isOpaque(pixels, offset, scanline, width, height)) {
+            return this;
+        }
+        return new ImageData(this, true);
+    }
+
+    /**
+     * Whether to scale with alpha handling.
+     */
+    boolean scaleAlpha() {
+        return hasAlpha && !opaqueContent;
+    }
+
 }
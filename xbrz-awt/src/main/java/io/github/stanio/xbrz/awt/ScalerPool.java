@@ -3,7 +3,9 @@ package io.github.stanio.xbrz.awt;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+import io.github.stanio.xbrz.ColorDistance;
 import io.github.stanio.xbrz.Xbrz;
+import io.github.stanio.xbrz.Xbrz.ScalerCfg;
 
 class ScalerPool {
 
@@ -12,21 +14,24 @@ class ScalerPool {
 
         final int scale;
         final boolean hasAlpha;
+        final boolean premultiplied;
         private final int hash;
 
-        private ScalerKey(int scale, boolean hasAlpha) {
+        private ScalerKey(int scale, boolean hasAlpha, boolean premultiplied) {
             this.scale = scale;
             this.hasAlpha = hasAlpha;
+            this.premultiplied = premultiplied;
 
             final int prime = 31;
             int hashCode = 1;
             hashCode = prime * hashCode + (hasAlpha ? 1231 : 1237);
+            hashCode = prime * hashCode + (premultiplied ? 1231 : 1237);
             hashCode = prime * hashCode + scale;
             this.hash = hashCode;
         }
 
-        static ScalerKey of(int scale, boolean hasAlpha) {
-            return new ScalerKey(scale, hasAlpha);
+        static ScalerKey of(int scale, boolean hasAlpha, boolean premultiplied) {
+            return new ScalerKey(scale, hasAlpha, premultiplied);
         }
 
         @Override
@@ -38,7 +43,8 @@ class ScalerPool {
         public boolean equals(Object obj) {
             if (obj instanceof ScalerKey) {
                 ScalerKey other = (ScalerKey) obj;
-                return scale == other.scale && hasAlpha == other.hasAlpha;
+                return scale == other.scale && hasAlpha == other.hasAlpha
+                        && premultiplied == other.premultiplied;
             }
             return false;
         }
@@ -49,8 +55,18 @@ class ScalerPool {
     private static Map<ScalerKey, Xbrz> scalers = new ConcurrentHashMap<>();
 
     static Xbrz getScaler(int factor, boolean withAlpha) {
-        return scalers.computeIfAbsent(ScalerKey.of(factor, withAlpha),
-                                       key -> new Xbrz(key.scale, key.hasAlpha));
+        return getScaler(factor, withAlpha, false);
+    }
+
+    static Xbrz getScaler(int factor, boolean withAlpha, boolean premultiplied) {
+        return scalers.computeIfAbsent(ScalerKey.of(factor, withAlpha, withAlpha && premultiplied),
+                                       key -> key.premultiplied ? premultipliedScaler(key.scale)
+                                                                : new Xbrz(key.scale, key.hasAlpha));
+    }
+
+    private static Xbrz premultipliedScaler(int factor) {
+        ScalerCfg cfg = new ScalerCfg();
+        return Xbrz.premultipliedAlpha(factor, cfg, ColorDistance.yCbCr(cfg.luminanceWeight));
     }
 
 }
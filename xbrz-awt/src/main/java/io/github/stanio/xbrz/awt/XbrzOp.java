@@ -13,6 +13,8 @@ import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.util.Objects;
 
 /**
@@ -26,6 +28,8 @@ public class XbrzOp implements BufferedImageOp {
 
     private final boolean directBuffer;
 
+    private final boolean premultipliedAlpha;
+
     public XbrzOp(int factor) {
         this(factor, null);
     }
@@ -34,10 +38,59 @@ public class XbrzOp implements BufferedImageOp {
         this(factor, false, hints);
     }
 
-    XbrzOp(int factor, boolean direct, RenderingHints hints) {
+    /**
+     * Constructs a new xBRZ operation.
+     * <p>
+     * With {@code untrackedData = true} the source and destination image
+     * data buffers could be accessed directly, without copying the pixels,
+     * when they are of {@code TYPE_INT_ARGB} or {@code TYPE_INT_RGB}.
+     * Sub-images, f.e. a region of a texture atlas as destination, are
+     * supported.  This makes the images' data buffers
+     * {@linkplain DataBufferInt##optimizations <i>untracked</i>}.</p>
+     *
+     * @param   factor  the scale factor to apply
+     * @param   untrackedData  whether to access the image data buffers
+     *          directly
+     * @param   hints  rendering hints to draw the scaled image to the
+     *          destination, or {@code null}
+     * @see     AwtXbrz#scaleImage(ImageData, int, boolean)
+     */
+    public XbrzOp(int factor, boolean untrackedData, RenderingHints hints) {
+        this(factor, untrackedData, hints, false);
+    }
+
+    private XbrzOp(int factor, boolean untrackedData, RenderingHints hints,
+                   boolean premultipliedAlpha) {
         this.factor = factor;
-        this.directBuffer = direct;
+        this.directBuffer = untrackedData;
         this.hints = hints;
+        this.premultipliedAlpha = premultipliedAlpha;
+    }
+
+    /**
+     * Creates an xBRZ operation scaling {@code TYPE_INT_ARGB_PRE} source
+     * images as premultiplied pixels, without converting them to
+     * non-premultiplied and back.  The results, and the compatible
+     * destination images, of such sources are {@code TYPE_INT_ARGB_PRE},
+     * as well.  The scaled pixels are visually equivalent to, but may differ
+     * by a unit or so from, the ones of the default operation.  Other
+     * source images are scaled as by the default operation.
+     * <p>
+     * With {@code untrackedData = true} {@code TYPE_INT_ARGB_PRE} image data
+     * buffers could be accessed directly, as well.</p>
+     *
+     * @param   factor  the scale factor to apply
+     * @param   untrackedData  whether to access the image data buffers
+     *          directly
+     * @param   hints  rendering hints to draw the scaled image to the
+     *          destination, or {@code null}
+     * @return  A new premultiplied alpha xBRZ operation
+     * @see     #XbrzOp(int, boolean, RenderingHints)
+     * @see     io.github.stanio.xbrz.Xbrz#premultipliedAlpha(int,
+     *          io.github.stanio.xbrz.Xbrz.ScalerCfg, io.github.stanio.xbrz.ColorDistance)
+     */
+    public static XbrzOp premultipliedAlpha(int factor, boolean untrackedData, RenderingHints hints) {
+        return new XbrzOp(factor, untrackedData, hints, true);
     }
 
     @Override
@@ -63,9 +116,11 @@ public class XbrzOp implements BufferedImageOp {
         Rectangle bounds = getBounds2D(src).getBounds();
         if (destCM == null) {
             return new BufferedImage(bounds.width, bounds.height,
-                                     src.getColorModel().hasAlpha()
-                                     ? BufferedImage.TYPE_INT_ARGB
-                                     : BufferedImage.TYPE_INT_RGB);
+                                     !src.getColorModel().hasAlpha()
+                                     ? BufferedImage.TYPE_INT_RGB
+                                     : premultipliedAlpha && src.getType() == BufferedImage.TYPE_INT_ARGB_PRE
+                                     ? BufferedImage.TYPE_INT_ARGB_PRE
+                                     : BufferedImage.TYPE_INT_ARGB);
         }
         return new BufferedImage(destCM,
                 destCM.createCompatibleWritableRaster(bounds.width, bounds.height),
@@ -78,17 +133,30 @@ public class XbrzOp implements BufferedImageOp {
         if (src == dst) {
             throw new IllegalArgumentException("src image cannot be the same as the dst image");
         }
-        return filter(new ImageData(src, directBuffer), dst);
+        return filter(new ImageData(src, directBuffer, premultipliedAlpha), dst);
     }
 
     BufferedImage filter(ImageData src, BufferedImage dst) {
+        if (dst != null && hints == null && directBuffer && isDirectTarget(src, dst)) {
+            // Scale straight into the destination raster
+            Raster raster = dst.getRaster();
+            int[] trg = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int trgScanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+            ScalerPool.getScaler(factor, src.scaleAlpha(), src.premultiplied)
+                    .scaleImage(src.pixels, src.offset, src.scanline, src.width, src.height,
+                                trg, ImageData.dataOffset(raster), trgScanline);
+            return dst;
+        }
+
         BufferedImage xbrz = AwtXbrz.scaleImage(src, factor, directBuffer);
         if (dst == null) {
             return xbrz;
         }
 
         if (hints == null) {
-            int[] rgb = ((DataBufferInt) xbrz.getRaster().getDataBuffer()).getData();
+            int[] rgb = xbrz.isAlphaPremultiplied()
+                        ? xbrz.getRGB(0, 0, xbrz.getWidth(), xbrz.getHeight(), null, 0, xbrz.getWidth())
+                        : ((DataBufferInt) xbrz.getRaster().getDataBuffer()).getData();
             int w = Math.min(xbrz.getWidth(), dst.getWidth());
             int h = Math.min(xbrz.getHeight(), dst.getHeight());
             dst.setRGB(0, 0, w, h, rgb, 0, xbrz.getWidth());
@@ -104,4 +172,12 @@ public class XbrzOp implements BufferedImageOp {
         return dst;
     }
 
+    private boolean isDirectTarget(ImageData src, BufferedImage dst) {
+        return ImageData.isDirectRGB(dst, src.premultiplied)
+                && dst.getColorModel().getColorSpace().isCS_sRGB()
+                && dst.getColorModel().hasAlpha() == src.hasAlpha
+                && dst.getWidth() >= (long) src.width * factor
+                && dst.getHeight() >= (long) src.height * factor;
+    }
+
 }
@@ -4,9 +4,13 @@
  */
 package io.github.stanio.xbrz.awt;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 
 import org.junit.Test;
@@ -58,6 +62,47 @@ public class ImageDataTest extends AbstractAwtXbrzTest {
         assertEquals("ImageData.hasAlpha", true, sourceData.hasAlpha);
     }
 
+    @Test
+    public void opaqueContentDetection() throws Exception {
+        BufferedImage image = ImageIO.read(resource("gbamockup-truecolor.png"));
+        BufferedImage source = new BufferedImage(image.getWidth(), image.getHeight(),
+                                                 BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = source.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        ImageData sourceData = ImageData.get(source).detectOpaque();
+
+        assertEquals("ImageData.hasAlpha", true, sourceData.hasAlpha);
+        assertEquals("ImageData.scaleAlpha()", false, sourceData.scaleAlpha());
+
+        source.setRGB(3, source.getHeight() - 1, 0x80FFFFFF);
+        sourceData = ImageData.get(source).detectOpaque();
+
+        assertEquals("ImageData.scaleAlpha()", true, sourceData.scaleAlpha());
+    }
+
+    @Test
+    public void byteInterleavedSource() throws Exception {
+        assertConvertedPixels("open-folder.png", BufferedImage.TYPE_4BYTE_ABGR);
+        assertConvertedPixels("gbamockup-truecolor.png", BufferedImage.TYPE_3BYTE_BGR);
+    }
+
+    private static void assertConvertedPixels(String name, int imageType) throws Exception {
+        BufferedImage image = ImageIO.read(resource(name));
+        BufferedImage source = new BufferedImage(image.getWidth(), image.getHeight(), imageType);
+        Graphics2D g = source.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        ImageData sourceData = ImageData.get(source);
+
+        assertArrayEquals(name, source.getRGB(0, 0, source.getWidth(), source.getHeight(),
+                                              null, 0, source.getWidth()),
+                          sourceData.pixels);
+    }
+
     @Test
     public void animatedSource() {
         Image source = toolkit().createImage(resource("loading.gif"));
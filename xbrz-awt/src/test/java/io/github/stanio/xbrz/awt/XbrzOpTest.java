@@ -4,8 +4,14 @@
  */
 package io.github.stanio.xbrz.awt;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
 import java.awt.image.WritableRaster;
 import javax.imageio.ImageIO;
 
@@ -37,4 +43,87 @@ public class XbrzOpTest extends AbstractAwtXbrzTest {
         assertEqualPixels(result, "gbamockup-indexcolor-part@6xbrz.png");
     }
 
+    @Test
+    public void directSubImages() throws Exception {
+        // Given
+        BufferedImage image = ImageIO.read(resource("open-folder.png"));
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        BufferedImage sourceSheet = new BufferedImage(width + 10, height + 20, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = sourceSheet.createGraphics();
+        g.drawImage(image, 5, 7, null);
+        g.dispose();
+        BufferedImage source = sourceSheet.getSubimage(5, 7, width, height);
+
+        BufferedImage atlas = new BufferedImage(width * 3 + 20, height * 3 + 30, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage target = atlas.getSubimage(11, 13, width * 3, height * 3);
+
+        // When
+        new XbrzOp(3, true, null).filter(source, target);
+
+        // Then
+        BufferedImage expected = new XbrzOp(3).filter(source, null);
+        assertArrayEquals(expected.getRGB(0, 0, width * 3, height * 3, null, 0, width * 3),
+                          target.getRGB(0, 0, width * 3, height * 3, null, 0, width * 3));
+        assertEquals("outside target region", 0, atlas.getRGB(10, 13 + height));
+        assertEquals("outside target region", 0, atlas.getRGB(11 + width * 3, 13 + height));
+        assertEquals("outside target region", 0, atlas.getRGB(11 + width, 12));
+        assertEquals("outside target region", 0, atlas.getRGB(11 + width, 13 + height * 3));
+    }
+
+    @Test
+    public void premultipliedAlpha() throws Exception {
+        // Given
+        BufferedImage image = ImageIO.read(resource("open-folder.png"));
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = source.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        XbrzOp op = XbrzOp.premultipliedAlpha(3, true, null);
+        BufferedImage target = op.createCompatibleDestImage(source, null);
+
+        // When
+        op.filter(source, target);
+
+        // Then
+        assertEquals("target type", BufferedImage.TYPE_INT_ARGB_PRE, target.getType());
+        BufferedImage expected = op.filter(source, null);
+        assertTrue("premultiplied result", expected.isAlphaPremultiplied());
+        assertArrayEquals(((DataBufferInt) expected.getRaster().getDataBuffer()).getData(),
+                          ((DataBufferInt) target.getRaster().getDataBuffer()).getData());
+    }
+
+    @Test
+    public void premultipliedSourceDefault() throws Exception {
+        // Given
+        BufferedImage image = ImageIO.read(resource("open-folder.png"));
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        BufferedImage source = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = source.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+
+        BufferedImage nonPremultiplied = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        nonPremultiplied.setRGB(0, 0, width, height,
+                source.getRGB(0, 0, width, height, null, 0, width), 0, width);
+
+        XbrzOp op = new XbrzOp(3, true, null);
+
+        // When
+        BufferedImage target = op.filter(source, null);
+
+        // Then
+        assertEquals("target type", BufferedImage.TYPE_INT_ARGB, target.getType());
+        BufferedImage expected = op.filter(nonPremultiplied, null);
+        assertArrayEquals(((DataBufferInt) expected.getRaster().getDataBuffer()).getData(),
+                          ((DataBufferInt) target.getRaster().getDataBuffer()).getData());
+    }
+
 }
@@ -0,0 +1,76 @@
+package io.github.stanio.xbrz;
+
+/**
+ * The blending decisions of the xBRZ scaler for a source image.
+ * <p>
+ * The corner preprocessing and the line shape analysis, the bulk of the
+ * scaling work, depend on the source pixels and the scaler configuration,
+ * but not on the scale factor.  A blend map computes them once, and may be
+ * rendered at multiple factors:</p>
+ * <pre>
+ *     BlendMap map = new Xbrz(2).blendMap(src, srcWidth, srcHeight);
+ *     int[] pixels2x = new Xbrz(2).scaleImage(map, null);
+ *     int[] pixels3x = new Xbrz(3).scaleImage(map, null);
+ *     int[] pixels4x = new Xbrz(4).scaleImage(map, null);</pre>
+ * <p>
+ * Rendering with an {@code Xbrz} instance of the same configuration as the
+ * one having computed the map gives the same result as scaling the source
+ * image directly.  The map keeps a copy of the source pixels, and two bytes
+ * of blending decisions per pixel.  Blend maps are immutable and may be
+ * rendered concurrently.</p>
+ *
+ * @see  Xbrz#blendMap(int[], int, int)
+ * @see  Xbrz#scaleImage(BlendMap, int[])
+ */
+public final class BlendMap {
+
+    final int width;
+    final int height;
+    final boolean withAlpha;
+    final int[] pixels;
+
+    //4-bit blend shapes of the four corners per pixel, see XbrzPipeline.blendShapes()
+    final short[] shapes;
+
+    BlendMap(int[] src, int srcWidth, int srcHeight, boolean withAlpha) {
+        if (srcWidth < 0 || srcHeight < 0)
+            throw new IllegalArgumentException("Negative source dimensions: "
+                    + srcWidth + "x" + srcHeight);
+
+        this.width = srcWidth;
+        this.height = srcHeight;
+        this.withAlpha = withAlpha;
+        this.pixels = new int[Math.multiplyExact(srcWidth, srcHeight)];
+        this.shapes = new short[pixels.length];
+        System.arraycopy(src, 0, pixels, 0, pixels.length);
+    }
+
+    /**
+     * Returns the width of the source image.
+     *
+     * @return  the source image width
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the source image.
+     *
+     * @return  the source image height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns whether the map has been computed by a scaler handling the
+     * alpha channel.
+     *
+     * @return  whether the alpha channel has been considered
+     */
+    public boolean withAlpha() {
+        return withAlpha;
+    }
+
+}
@@ -2,9 +2,22 @@ package io.github.stanio.xbrz;
 
 import static io.github.stanio.xbrz.Color.*;
 
-import java.lang.ref.WeakReference;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * Calculates color distance between two pixels.
@@ -14,15 +27,25 @@ public interface ColorDistance {
 
     double calc(int pix1, int pix2);
 
-    static ColorDistance rgb() {
-        return (pix1, pix2) -> {
-            final int r_diff = getRed  (pix1) - getRed  (pix2);
-            final int g_diff = getGreen(pix1) - getGreen(pix2);
-            final int b_diff = getBlue (pix1) - getBlue (pix2);
+    /**
+     * Calculates the squared color distance between two pixels.  The result
+     * should be monotonic with {@link #calc(int, int) calc}, such that
+     * comparisons of squared distances match comparisons of the distances.
+     * <p>
+     * The default implementation squares the {@code calc} result.
+     * Implementations may override it to avoid computing a square root.</p>
+     *
+     * @param   pix1  first pixel
+     * @param   pix2  second pixel
+     * @return  The squared distance between the two pixels
+     */
+    default double calcSquared(int pix1, int pix2) {
+        final double d = calc(pix1, pix2);
+        return d * d;
+    }
 
-            //euklidean RGB distance
-            return Math.sqrt(r_diff * r_diff + g_diff * g_diff + b_diff * b_diff);
-        };
+    static ColorDistance rgb() {
+        return new ColorDistanceRGB();
     }
 
     static ColorDistance yCbCr(double lumaWeight) {
@@ -33,25 +56,217 @@ public interface ColorDistance {
         return new ColorDistanceYCbCrInteger(lumaWeight);
     }
 
+    /**
+     * YCbCr color distance computed in fixed-point {@code int} arithmetic.
+     * The {@linkplain #calcSquared squared distance} is exact for the
+     * fixed-point coefficients, and involves no floating-point operations.
+     *
+     * @param   lumaWeight  the luminance weight
+     * @return  A fixed-point YCbCr color distance
+     * @see     Xbrz#fixedPoint(int, boolean, Xbrz.ScalerCfg)
+     */
+    static ColorDistance fixedYCbCr(double lumaWeight) {
+        return new ColorDistanceYCbCrFixed(lumaWeight);
+    }
+
+    /**
+     * YCbCr color distance looked up from a table of precomputed distances
+     * for the channel differences, truncated to the given number of
+     * significant bits.
+     * <p>
+     * The table is shared, and stays in memory until {@linkplain
+     * #releaseBufferedYCbCr(int) released} explicitly.</p>
+     *
+     * @param   sigBits  significant bits of the channel differences, from
+     *          2 to 8: 5 bits take 128 KB, 8 bits take 64 MB
+     * @return  A buffered YCbCr color distance
+     * @throws  IllegalArgumentException  if {@code sigBits} is out of range
+     * @see     #quantizedYCbCr(int)
+     */
     static ColorDistance bufferedYCbCr(int sigBits) {
         return ColorDistanceYCbCrBuffered.instance(sigBits);
     }
 
+    /**
+     * YCbCr color distance looked up from a compact table of precomputed
+     * distances.  Like {@link #bufferedYCbCr(int) bufferedYCbCr}, but the
+     * channel differences are rounded to the given number of significant
+     * bits, and the distances are quantized to 1/64 units, taking a quarter
+     * of the memory.  The results differ slightly from the ones of
+     * {@code bufferedYCbCr}.  Equal colors get a zero distance, and the
+     * distance is symmetric.
+     * <p>
+     * The table is shared, and stays in memory until {@linkplain
+     * #releaseBufferedYCbCr(int) released} explicitly.  Tables of 6 or
+     * more significant bits are computed in parallel.</p>
+     *
+     * @param   sigBits  significant bits of the channel differences, from
+     *          2 to 8: 5 bits take 36 KB, 8 bits take 16 MB
+     * @return  A quantized YCbCr color distance
+     * @throws  IllegalArgumentException  if {@code sigBits} is out of range
+     */
+    static ColorDistance quantizedYCbCr(int sigBits) {
+        return ColorDistanceYCbCrQuantized.instance(sigBits);
+    }
+
+    /**
+     * {@link #quantizedYCbCr(int) Quantized} YCbCr color distance looked up
+     * from a table kept in the given cache file.  A valid existing file is
+     * memory-mapped, so loading it is practically instant.  Otherwise the
+     * table is computed and saved to the file.
+     * <p>
+     * The returned instance is not shared.  A mapped file stays mapped
+     * until the instance becomes unreachable and gets garbage collected;
+     * {@link #releaseBufferedYCbCr(int) releaseBufferedYCbCr} doesn't
+     * affect it.  Some platforms (f.e. Windows) don't allow deleting or
+     * replacing the file while it is mapped.</p>
+     *
+     * @param   sigBits  significant bits of the channel differences, from
+     *          2 to 8
+     * @param   cacheFile  the table cache file
+     * @return  A quantized YCbCr color distance
+     * @throws  IOException  if an I/O error occurs reading or writing the
+     *          cache file
+     * @throws  IllegalArgumentException  if {@code sigBits} is out of range
+     * @see     #quantizedYCbCr(int)
+     */
+    static ColorDistance quantizedYCbCr(int sigBits, Path cacheFile) throws IOException {
+        return ColorDistanceYCbCrQuantized.load(sigBits, cacheFile);
+    }
+
+    /**
+     * Releases the shared {@link #bufferedYCbCr(int) bufferedYCbCr} and
+     * {@link #quantizedYCbCr(int) quantizedYCbCr} tables of the given
+     * significant bits.  Color distance instances obtained earlier remain
+     * usable.
+     *
+     * @param   sigBits  significant bits of the tables to release
+     * @return  {@code true} if a shared table has been released
+     */
+    static boolean releaseBufferedYCbCr(int sigBits) {
+        boolean released = ColorDistanceYCbCrBuffered.release(sigBits);
+        return ColorDistanceYCbCrQuantized.release(sigBits) || released;
+    }
+
     static ColorDistance withAlpha(ColorDistance dist) {
-        return (pix1, pix2) -> {
-            final int a1 = getAlpha(pix1);
-            final int a2 = getAlpha(pix2);
-            /*
-            Requirements for a color distance handling alpha channel: with a1, a2 in [0, 1]
-
-                1. if a1 = a2, distance should be: a1 * distYCbCr()
-                2. if a1 = 0,  distance should be: a2 * distYCbCr(black, white) = a2 * 255
-                3. if a1 = 1,  ??? maybe: 255 * (1 - a2) + a2 * distYCbCr()
-            */
-            final double d = dist.calc(pix1, pix2);
-            return (a1 < a2) ? a1 / 255.0 * d + (a2 - a1)
-                             : a2 / 255.0 * d + (a1 - a2);
-        };
+        return new ColorDistanceAlpha(dist);
+    }
+
+    static ColorDistance withPremultipliedAlpha(ColorDistance dist) {
+        return new ColorDistancePremultiplied(dist);
+    }
+
+}
+
+
+class ColorDistanceRGB implements ColorDistance {
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        return Math.sqrt(calcSquared(pix1, pix2));
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        final int r_diff = getRed  (pix1) - getRed  (pix2);
+        final int g_diff = getGreen(pix1) - getGreen(pix2);
+        final int b_diff = getBlue (pix1) - getBlue (pix2);
+
+        //euklidean RGB distance
+        return r_diff * r_diff + g_diff * g_diff + b_diff * b_diff;
+    }
+
+}
+
+
+class ColorDistanceAlpha implements ColorDistance {
+
+    final ColorDistance dist;
+
+    ColorDistanceAlpha(ColorDistance dist) {
+        this.dist = dist;
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        final int a1 = getAlpha(pix1);
+        final int a2 = getAlpha(pix2);
+        /*
+        Requirements for a color distance handling alpha channel: with a1, a2 in [0, 1]
+
+            1. if a1 = a2, distance should be: a1 * distYCbCr()
+            2. if a1 = 0,  distance should be: a2 * distYCbCr(black, white) = a2 * 255
+            3. if a1 = 1,  ??? maybe: 255 * (1 - a2) + a2 * distYCbCr()
+        */
+        final double d = dist.calc(pix1, pix2);
+        return (a1 < a2) ? a1 / 255.0 * d + (a2 - a1)
+                         : a2 / 255.0 * d + (a1 - a2);
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        final int a1 = getAlpha(pix1);
+        if (a1 != getAlpha(pix2)) {
+            final double d = calc(pix1, pix2);
+            return d * d;
+        }
+        // common case: (a1 / 255 * d)^2 without the square root
+        final double d2 = dist.calcSquared(pix1, pix2);
+        return (a1 == 0xFF) ? d2 : square(a1 / 255.0) * d2;
+    }
+
+    private static double square(double value) { return value * value; }
+
+}
+
+
+/*
+Premultiplied color channels are already scaled by their alpha, so for
+equal alphas the distance of the channels is a * dist(), as for
+ColorDistanceAlpha, without the division.  Different alphas add up their
+difference.
+*/
+class ColorDistancePremultiplied implements ColorDistance {
+
+    final ColorDistance dist;
+
+    ColorDistancePremultiplied(ColorDistance dist) {
+        this.dist = dist;
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        return dist.calc(pix1, pix2) + Math.abs(getAlpha(pix1) - getAlpha(pix2));
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        if (getAlpha(pix1) != getAlpha(pix2)) {
+            final double d = calc(pix1, pix2);
+            return d * d;
+        }
+        return dist.calcSquared(pix1, pix2);
+    }
+
+}
+
+
+/*
+Presents the squared distance of another color distance as its distance
+function.  Decisions comparing distances against each other, or against
+thresholds, stay the same if the thresholds are squared, as well.
+*/
+class SquaredColorDistance implements ColorDistance {
+
+    private final ColorDistance dist;
+
+    SquaredColorDistance(ColorDistance dist) {
+        this.dist = dist;
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        return dist.calcSquared(pix1, pix2);
     }
 
 }
@@ -76,6 +291,11 @@ class ColorDistanceYCbCr implements ColorDistance {
 
     @Override
     public double calc(int pix1, int pix2) {
+        return Math.sqrt(calcSquared(pix1, pix2));
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
         // https://en.wikipedia.org/wiki/YCbCr#ITU-R_BT.601_conversion
         // YCbCr conversion is a matrix multiplication => take advantage of linearity by subtracting first!
         final int r_diff = getRed  (pix1) - getRed  (pix2); // we may delay division by 255 to after matrix multiplication
@@ -87,8 +307,8 @@ class ColorDistanceYCbCr implements ColorDistance {
         final double c_r = scale_r * (r_diff - y);
 
         // we skip division by 255 to have similar range like other distance functions
-        return Math.sqrt(square(lumaWeight == 1.0 ? y : lumaWeight * y)
-                         + square(c_b) + square(c_r));
+        return square(lumaWeight == 1.0 ? y : lumaWeight * y)
+                + square(c_b) + square(c_r);
     }
 
     static double square(double value) { return value * value; }
@@ -116,6 +336,15 @@ class ColorDistanceYCbCrInteger implements ColorDistance {
 
     @Override
     public double calc(int pix1, int pix2) {
+        return Math.sqrt(calcSquaredLong(pix1, pix2));
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        return calcSquaredLong(pix1, pix2);
+    }
+
+    private long calcSquaredLong(int pix1, int pix2) {
         final long r_diff = getRed  (pix1) - getRed  (pix2);
         final long g_diff = getGreen(pix1) - getGreen(pix2);
         final long b_diff = getBlue (pix1) - getBlue (pix2);
@@ -124,8 +353,8 @@ class ColorDistanceYCbCrInteger implements ColorDistance {
         final long c_b = PRECISION * (PRECISION * b_diff - y) / denom_b;
         final long c_r = PRECISION * (PRECISION * r_diff - y) / denom_r;
 
-        return Math.sqrt((square(lumaWeight == PRECISION ? y : y * lumaWeight / PRECISION)
-                          + square(c_b) + square(c_r)) / PRECISION_SQ);
+        return (square(lumaWeight == PRECISION ? y : y * lumaWeight / PRECISION)
+                + square(c_b) + square(c_r)) / PRECISION_SQ;
     }
 
     static long square(long value) { return value * value; }
@@ -133,6 +362,67 @@ class ColorDistanceYCbCrInteger implements ColorDistance {
 }
 
 
+/*
+Coefficients are scaled by 2^8, and the channel differences are scaled by
+2^4 (1/16 units) before squaring, so all intermediate values fit in int:
+|y|, |c_b|, |c_r| < 4096 (16 * 255), and their squares sum up below 2^26.
+*/
+class ColorDistanceYCbCrFixed implements ColorDistance {
+
+    private static final int SHIFT = 8;
+
+    static final int k_b = 15;  // 0.0593 * 256
+    static final int k_r = 67;  // 0.2627 * 256
+    static final int k_g = (1 << SHIFT) - k_b - k_r;
+
+    static final int scale_b = 136; // 0.5 / (1 - 0.0593) * 256
+    static final int scale_r = 174; // 0.5 / (1 - 0.2627) * 256
+
+    private static final double UNIT_SQ = 1.0 / 256; // (1/16)^2
+
+    private final int lumaWeight;
+
+    ColorDistanceYCbCrFixed(double lumaWeight) {
+        this.lumaWeight = (int) Math.round(lumaWeight * (1 << SHIFT));
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        return Math.sqrt(calcSquared(pix1, pix2));
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        // exact: a power-of-two fraction of an int
+        return calcSquaredFixed(pix1, pix2) * UNIT_SQ;
+    }
+
+    //squared distance in 1/256 units
+    final int calcSquaredFixed(int pix1, int pix2) {
+        final int r_diff = getRed  (pix1) - getRed  (pix2);
+        final int g_diff = getGreen(pix1) - getGreen(pix2);
+        final int b_diff = getBlue (pix1) - getBlue (pix2);
+
+        final int y   = k_r * r_diff + k_g * g_diff + k_b * b_diff; // 2^8
+        final int c_b = (((b_diff << SHIFT) - y) * scale_b) >> 12;  // 2^8 * 2^8 -> 2^4
+        final int c_r = (((r_diff << SHIFT) - y) * scale_r) >> 12;
+        final int y_w = (y * lumaWeight) >> 12;                     // 2^8 * 2^8 -> 2^4
+
+        return y_w * y_w + c_b * c_b + c_r * c_r;
+    }
+
+}
+
+
+/*
+The distances of the (r, g, b) channel differences truncated to the given
+number of significant bits, at the middle of each bucket, as float values:
+
+    sigBits 5:  32K entries = 128 KB
+    sigBits 8:  16M entries =  64 MB
+
+See ColorDistanceYCbCrQuantized for a more compact table.
+*/
 class ColorDistanceYCbCrBuffered extends ColorDistanceYCbCr {
 
     // -255 .. 255
@@ -146,9 +436,7 @@ class ColorDistanceYCbCrBuffered extends ColorDistanceYCbCr {
     // (1 << (3 * 8 sigBits)) = 16M * Float.BYTES = 64M buffer
     public ColorDistanceYCbCrBuffered(int sigBits) {
         super(1);
-        if (sigBits < 2 || sigBits > 8) {
-            throw new IllegalArgumentException("Illegal sigBits: " + sigBits);
-        }
+        validate(sigBits);
 
         this.sigBits = sigBits;
         this.adjBits = diffSize - sigBits;
@@ -173,24 +461,26 @@ class ColorDistanceYCbCrBuffered extends ColorDistanceYCbCr {
         }
     }
 
-    private static ConcurrentMap<Integer, WeakReference<ColorDistanceYCbCrBuffered>>
+    private static void validate(int sigBits) {
+        if (sigBits < 2 || sigBits > 8) {
+            throw new IllegalArgumentException("Illegal sigBits: " + sigBits);
+        }
+    }
+
+    private static ConcurrentMap<Integer, ColorDistanceYCbCrBuffered>
             instances = new ConcurrentHashMap<>();
 
+    /**
+     * Returns the shared instance for the given {@code sigBits}.  It stays
+     * cached until {@linkplain #release(int) released}.
+     */
     public static ColorDistanceYCbCrBuffered instance(int sigBits) {
-        ColorDistanceYCbCrBuffered[] ptr = { null };
-        instances.compute(sigBits, (k, ref) -> {
-            ColorDistanceYCbCrBuffered obj = (ref == null) ? null : ref.get();
-            try {
-                if (obj == null) {
-                    obj = new ColorDistanceYCbCrBuffered(k);
-                    return new WeakReference<>(obj);
-                }
-                return ref;
-            } finally {
-                ptr[0] = obj;
-            }
-        });
-        return ptr[0];
+        validate(sigBits); // before computing
+        return instances.computeIfAbsent(sigBits, ColorDistanceYCbCrBuffered::new);
+    }
+
+    static boolean release(int sigBits) {
+        return instances.remove(sigBits) != null;
     }
 
     @Override
@@ -206,4 +496,323 @@ class ColorDistanceYCbCrBuffered extends ColorDistanceYCbCr {
         return diffToDist[index];
     }
 
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        final double d = calc(pix1, pix2);
+        return d * d;
+    }
+
+}
+
+
+/*
+The distance depends only on the (r, g, b) channel differences, and is the same
+for (-r, -g, -b), so the table covers the differences with (r, g, b) >= 0 in
+lexicographic order only ("folded"): 0 <= r <= 255, -255 <= g, b <= 255.  The
+differences are rounded to multiples of 2^adjBits, and the distances (< 1024)
+are stored as 1/64 units in a char table:
+
+    sigBits 5:  18K entries =  36 KB
+    sigBits 8: 8.5M entries =  16 MB
+
+Large tables are computed in parallel, and may be cached in a file, which is
+memory-mapped on subsequent loads.  The mapping is released only when the
+instance gets garbage collected, as Java 8 provides no explicit unmapping.
+*/
+class ColorDistanceYCbCrQuantized extends ColorDistanceYCbCr {
+
+    // -255 .. 255
+    private static final int diffSize = 9;
+
+    private static final double UNIT = 1.0 / 64;
+
+    private static final int PARALLEL_SIG_BITS = 6;
+
+    //cache file header: magic, version, sigBits, table length
+    private static final int MAGIC = 0x7842525A; // "xBRZ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    private final int adjBits; // diffSize - sigBits
+    private final int round;   // half of 2^adjBits
+    private final int stride;
+    private final CharBuffer diffToDist;
+
+    public ColorDistanceYCbCrQuantized(int sigBits) {
+        this(sigBits, CharBuffer.wrap(createTable(sigBits)));
+    }
+
+    private ColorDistanceYCbCrQuantized(int sigBits, CharBuffer diffToDist) {
+        super(1);
+        this.adjBits = diffSize - sigBits;
+        this.round = 1 << (adjBits - 1);
+        this.stride = stride(sigBits);
+        this.diffToDist = diffToDist;
+    }
+
+    private static int tableLength(int sigBits) {
+        if (sigBits < 2 || sigBits > 8) {
+            throw new IllegalArgumentException("Illegal sigBits: " + sigBits);
+        }
+        return ((1 << (sigBits - 1)) + 1) * square(stride(sigBits));
+    }
+
+    //number of rounded g, b values: -2^sigBits / 2 .. 2^sigBits / 2
+    private static int stride(int sigBits) {
+        return (1 << sigBits) + 1;
+    }
+
+    private static int square(int value) { return value * value; }
+
+    private static char[] createTable(int sigBits) {
+        final char[] table = new char[tableLength(sigBits)];
+        final int rBuckets = (1 << (sigBits - 1)) + 1;
+        IntStream rValues = IntStream.range(0, rBuckets);
+        if (sigBits >= PARALLEL_SIG_BITS) {
+            rValues = rValues.parallel();
+        }
+        rValues.forEach(r -> fillTable(table, sigBits, r));
+        return table;
+    }
+
+    //fills the table section of the given compressed r_diff value
+    private static void fillTable(char[] table, int sigBits, int r) {
+        final int adjBits = diffSize - sigBits;
+        final int stride = stride(sigBits);
+        final int r_diff = r << adjBits; // expanded value
+        for (int g = 0, i = r * stride * stride; g < stride; g++) {
+            for (int b = 0; b < stride; b++, i++) {
+                // expanded values
+                final int g_diff = (g << adjBits) - 256;
+                final int b_diff = (b << adjBits) - 256;
+
+                final double y   = k_r * r_diff + k_g * g_diff + k_b * b_diff; //[!], analog YCbCr!
+                final double c_b = scale_b * (b_diff - y);
+                final double c_r = scale_r * (r_diff - y);
+
+                table[i] = (char) Math.round(Math.sqrt(square(y) + square(c_b) + square(c_r)) / UNIT);
+            }
+        }
+    }
+
+    private static ConcurrentMap<Integer, ColorDistanceYCbCrQuantized>
+            instances = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared instance for the given {@code sigBits}.  It stays
+     * cached until {@linkplain #release(int) released}.
+     */
+    public static ColorDistanceYCbCrQuantized instance(int sigBits) {
+        tableLength(sigBits); // validate before computing
+        return instances.computeIfAbsent(sigBits, ColorDistanceYCbCrQuantized::new);
+    }
+
+    static boolean release(int sigBits) {
+        return instances.remove(sigBits) != null;
+    }
+
+    /**
+     * Loads the table from the given cache file, or computes it and saves it
+     * to the file if it doesn't exist or is not valid.  A valid file is
+     * memory-mapped, and stays mapped until the returned instance becomes
+     * unreachable and gets garbage collected.
+     */
+    static ColorDistanceYCbCrQuantized load(int sigBits, Path cacheFile) throws IOException {
+        final int length = tableLength(sigBits);
+        final long fileSize = HEADER_SIZE + (long) length * Character.BYTES;
+        if (Files.isRegularFile(cacheFile) && Files.size(cacheFile) == fileSize) {
+            try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                ByteBuffer mapped = channel.map(MapMode.READ_ONLY, 0, fileSize)
+                                           .order(ByteOrder.LITTLE_ENDIAN);
+                if (mapped.getInt(0) == MAGIC
+                        && mapped.getInt(4) == VERSION
+                        && mapped.getInt(8) == sigBits
+                        && mapped.getInt(12) == length) {
+                    mapped.position(HEADER_SIZE);
+                    CharBuffer table = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+                    return new ColorDistanceYCbCrQuantized(sigBits, table);
+                }
+            }
+        }
+
+        char[] table = createTable(sigBits);
+        save(cacheFile, sigBits, table);
+        return new ColorDistanceYCbCrQuantized(sigBits, CharBuffer.wrap(table));
+    }
+
+    private static void save(Path cacheFile, int sigBits, char[] table) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + table.length * Character.BYTES)
+                                    .order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(MAGIC).putInt(VERSION).putInt(sigBits).putInt(table.length);
+        data.asCharBuffer().put(table);
+        data.rewind();
+
+        Path dir = cacheFile.toAbsolutePath().getParent();
+        Path tempFile = Files.createTempFile(dir, cacheFile.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            // concurrent loaders see either no file or a complete one
+            try {
+                Files.move(tempFile, cacheFile, StandardCopyOption.ATOMIC_MOVE,
+                                                StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        int r_diff = getRed  (pix1) - getRed  (pix2);
+        int g_diff = getGreen(pix1) - getGreen(pix2);
+        int b_diff = getBlue (pix1) - getBlue (pix2);
+
+        // fold: (r, g, b) -> (-r, -g, -b) if lexicographically negative
+        final int sign = ((r_diff << 18) + (g_diff << 9) + b_diff) >> 31;
+        r_diff = (r_diff ^ sign) - sign;
+        g_diff = (g_diff ^ sign) - sign;
+        b_diff = (b_diff ^ sign) - sign;
+
+        // rounded, compressed index
+        final int index = (((r_diff + round) >> adjBits) * stride
+                           + ((g_diff + 256 + round) >> adjBits)) * stride
+                          + ((b_diff + 256 + round) >> adjBits);
+        return diffToDist.get(index) * UNIT;
+    }
+
+    @Override
+    public double calcSquared(int pix1, int pix2) {
+        final double d = calc(pix1, pix2);
+        return d * d;
+    }
+
+}
+
+
+/*
+Computes the color distances of many pixel pairs at once, when supported for
+the given color distance function.  The Java 17+ layer provides an implementation
+using the (incubating) Vector API, if the jdk.incubator.vector module is present
+at run time: --add-modules jdk.incubator.vector
+*/
+abstract class ColorDistanceBatch {
+
+    private static final Function<ColorDistance, ColorDistanceBatch>
+            provider = loadProvider("io.github.stanio.xbrz.ColorDistanceVector");
+
+    /**
+     * {@code trg[trgPos + i] = dist.calc(src[pos1 + i], src[pos2 + i])}
+     * for {@code i} in {@code [0, length)}
+     */
+    abstract void calc(int[] src, int pos1, int pos2, double[] trg, int trgPos, int length);
+
+    static ColorDistanceBatch of(ColorDistance dist) {
+        return (provider == null) ? null : provider.apply(dist);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<ColorDistance, ColorDistanceBatch> loadProvider(String className) {
+        try {
+            return (Function<ColorDistance, ColorDistanceBatch>)
+                    Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // not available
+        }
+    }
+
+}
+
+
+/**
+ * Pairwise color distances of a palette, computed up front.
+ * <p>
+ * Colors are mapped to their palette index using a small open-addressing
+ * hash table.  The transparent {@code 0} color used outside the image
+ * boundaries is always included.</p>
+ */
+class PaletteDistance implements ColorDistance {
+
+    private final ColorDistance dist;
+    private final int size;
+    private final double[] matrix;
+
+    private final int[] hashColors;
+    private final int[] hashIndices; // index + 1, 0 - empty slot
+    private final int hashShift;
+
+    PaletteDistance(ColorDistance dist, int[] palette) {
+        this.dist = dist;
+        this.size = palette.length + 1;
+
+        int[] colors = Arrays.copyOf(palette, size); // + transparent
+        this.matrix = new double[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                matrix[i * size + j] = dist.calc(colors[i], colors[j]);
+            }
+        }
+
+        int capacity = Integer.highestOneBit(size) << 2;
+        this.hashShift = Integer.SIZE - Integer.numberOfTrailingZeros(capacity);
+        this.hashColors = new int[capacity];
+        this.hashIndices = new int[capacity];
+        for (int i = 0; i < size; i++) {
+            int slot = slot(colors[i]);
+            while (hashIndices[slot] != 0 && hashColors[slot] != colors[i]) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            if (hashIndices[slot] == 0) {
+                hashColors[slot] = colors[i];
+                hashIndices[slot] = i + 1;
+            }
+        }
+    }
+
+    private int slot(int color) {
+        return (color * 0x9E3779B9) >>> hashShift;
+    }
+
+    private int indexOf(int color) {
+        int slot = slot(color);
+        int index;
+        while ((index = hashIndices[slot]) != 0) {
+            if (hashColors[slot] == color)
+                return index - 1;
+            slot = (slot + 1) & (hashIndices.length - 1);
+        }
+        return -1;
+    }
+
+    @Override
+    public double calc(int pix1, int pix2) {
+        final int index1 = indexOf(pix1);
+        final int index2 = indexOf(pix2);
+        if (index1 < 0 || index2 < 0)
+            return dist.calc(pix1, pix2); // not from the palette
+
+        return matrix[index1 * size + index2];
+    }
+
+    /**
+     * Looks up the distances by the palette {@code indices} at the same
+     * positions as the {@code src} pixels.
+     */
+    ColorDistanceBatch batch(byte[] indices) {
+        return new ColorDistanceBatch() {
+            @Override
+            void calc(int[] src, int pos1, int pos2, double[] trg, int trgPos, int length) {
+                for (int i = 0; i < length; i++) {
+                    trg[trgPos + i] = matrix[(indices[pos1 + i] & 0xFF) * size
+                                             + (indices[pos2 + i] & 0xFF)];
+                }
+            }
+        };
+    }
+
 }
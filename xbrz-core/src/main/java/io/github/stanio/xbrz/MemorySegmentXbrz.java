@@ -0,0 +1,111 @@
+package io.github.stanio.xbrz;
+
+import java.nio.ByteOrder;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * xBRZ scaling of (off-heap) {@code java.lang.foreign.MemorySegment}s,
+ * available on Java 22+.
+ * <p>
+ * The source and target segments may be larger than the 2 GB limit of
+ * {@code IntBuffer} views.  Only a few rows of source and target pixels
+ * are copied through intermediate arrays at a time.</p>
+ * <p>
+ * The segments are passed as {@code Object}s, as the library API remains
+ * Java 8 compatible.  On earlier Java versions {@link #of(Xbrz)} returns
+ * an empty result:</p>
+ * <pre>
+ *     MemorySegmentXbrz.of(xbrz).ifPresent(scaler -&gt;
+ *             scaler.scaleImage(src, trg, srcWidth, srcHeight));</pre>
+ *
+ * @see  Xbrz#scaleImage(java.nio.IntBuffer, java.nio.IntBuffer, int, int)
+ */
+public final class MemorySegmentXbrz {
+
+    /*
+    Provided by the Java 22+ layer of the multi-release jar. */
+    interface Provider {
+        void scaleImage(Xbrz xbrz, Object src, Object trg,
+                        int srcWidth, int srcHeight, ByteOrder byteOrder);
+    }
+
+    private static final Provider provider = loadProvider("io.github.stanio.xbrz.MemorySegmentScaler");
+
+    private final Xbrz xbrz;
+
+    private MemorySegmentXbrz(Xbrz xbrz) {
+        this.xbrz = Objects.requireNonNull(xbrz, "xbrz");
+    }
+
+    private static Provider loadProvider(String className) {
+        try {
+            return (Provider) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // not available
+        }
+    }
+
+    /**
+     * Tells whether scaling memory segments is supported by the current
+     * Java runtime.
+     *
+     * @return  {@code true} on Java 22+
+     * @see     #of(Xbrz)
+     */
+    public static boolean isSupported() {
+        return provider != null;
+    }
+
+    /**
+     * Returns a memory segment scaler applying the given {@code xbrz}
+     * scaler, if supported by the current Java runtime.
+     *
+     * @param   xbrz  the scaler to apply
+     * @return  A memory segment scaler, or an empty result if the Java
+     *          runtime doesn't support memory segments
+     * @see     #isSupported()
+     */
+    public static Optional<MemorySegmentXbrz> of(Xbrz xbrz) {
+        return (provider == null) ? Optional.empty()
+                                  : Optional.of(new MemorySegmentXbrz(xbrz));
+    }
+
+    /**
+     * {@code scaleImage(src, trg, srcWidth, srcHeight, ByteOrder.nativeOrder())}
+     *
+     * @param   src  source pixels ({@code MemorySegment})
+     * @param   trg  target segment ({@code MemorySegment})
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @see     #scaleImage(Object, Object, int, int, ByteOrder)
+     */
+    public void scaleImage(Object src, Object trg, int srcWidth, int srcHeight) {
+        scaleImage(src, trg, srcWidth, srcHeight, ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Scales the {@code src} pixels to the {@code trg} segment.
+     * <p>
+     * The {@code srcWidth * srcHeight} source pixels are read starting at
+     * offset 0 of the {@code src} segment, and the scaled pixels are written
+     * starting at offset 0 of the {@code trg} segment.  The segments needn't
+     * be aligned.</p>
+     *
+     * @param   src  source pixels ({@code MemorySegment})
+     * @param   trg  target segment ({@code MemorySegment})
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   byteOrder  the byte order of the <abbr>ARGB</abbr> pixel
+     *          values in the segments
+     * @throws  IllegalArgumentException  if {@code src} or {@code trg} is
+     *          not a {@code MemorySegment}
+     * @throws  IndexOutOfBoundsException  if either of the segments is
+     *          smaller than the respective image requires
+     */
+    public void scaleImage(Object src, Object trg,
+                           int srcWidth, int srcHeight, ByteOrder byteOrder) {
+        provider.scaleImage(xbrz, src, trg, srcWidth, srcHeight, byteOrder);
+    }
+
+}
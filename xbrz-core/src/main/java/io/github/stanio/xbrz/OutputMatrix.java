@@ -1,65 +1,83 @@
 package io.github.stanio.xbrz;
 
-import static io.github.stanio.xbrz.MatrixRotation.HALF_BYTE;
-import static io.github.stanio.xbrz.RotationDegree.*;
-
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Arrays;
 
 //access matrix area, top-left at current position
 final class OutputMatrix {
 
+    private static final int ROTATIONS = RotationDegree.values().length;
+
     private int N;
     private int[] out;
     private int outWidth;
 
-    private int offset;
-    private RotationDegree rotDeg = ROT_0;
-    private MatrixRotation rot;
+    private Scaler scaler;
+    //[blend kind * ROTATIONS + rotation] offsets from the top-left, see Scaler
+    private int[][] offsets;
+    private int[][] weights;
 
-    private OutputMatrix() {}
+    private int offset;
+    private int originOffset;
+    private int originY;
+    private int rotDeg;
 
-    private static final ThreadLocal<OutputMatrix> instance = new ThreadLocal<>();
+    OutputMatrix() {}
 
-    static OutputMatrix instance(int N, int[] out, int outWidth) {
-        OutputMatrix matrix = instance.get();
-        if (matrix == null) {
-            matrix = new OutputMatrix();
-            instance.set(matrix);
+    final void init(Scaler scaler, int[] out, int outWidth) {
+        if (scaler != this.scaler || outWidth != this.outWidth || offsets == null) {
+            this.offsets = scaler.offsets(outWidth);
+            this.weights = scaler.weights();
+            this.scaler = scaler;
         }
-        matrix.N = N;
-        matrix.out = out;
-        matrix.outWidth = outWidth;
-        matrix.rot = MatrixRotation.of(N);
-        return matrix;
+        this.N = scaler.scale();
+        this.out = out;
+        this.outWidth = outWidth;
+        origin(0, 0);
+    }
+
+    final void release() {
+        this.out = null;
+    }
+
+    //the output block of source pixel (?, originY) starts at out[originOffset]
+    final void origin(int originOffset, int originY) {
+        this.originOffset = originOffset;
+        this.originY = originY;
     }
 
     final void positionY(int y) {
-        offset = N * y * outWidth;
+        offset = originOffset + N * (y - originY) * outWidth;
     }
 
     final void incrementX() {
         offset += N;
     }
 
+    final void incrementX(int blockCount) {
+        offset += N * blockCount;
+    }
+
     final void rotDeg(RotationDegree deg) {
-        this.rotDeg = deg;
+        this.rotDeg = deg.ordinal();
+    }
+
+    final int[] target() {
+        return out;
     }
 
-    private final int position(final int I, final int J) {
-        final byte IJ_old = rot.calc(rotDeg, I, J);
-        final int I_old = IJ_old >> HALF_BYTE & 0xF;
-        final int J_old = IJ_old & 0xF;
-        return offset + J_old + I_old * outWidth;
+    final int offset() {
+        return offset;
     }
 
-    final void set(int I, int J, int val) {
-        out[position(I, J)] = val;
+    //offsets of the Scaler blend pattern of the given kind, in the current
+    //rotation, from the current position
+    final int[] pattern(int kind) {
+        return offsets[kind * ROTATIONS + rotDeg];
     }
 
-    final void set(int I, int J, IntFunction func) {
-        final int pos = position(I, J);
-        out[pos] = func.apply(out[pos]);
+    //M, N pairs of the pattern operations, M == N for set
+    final int[] weights(int kind) {
+        return weights[kind];
     }
 
     //fill block of size scale * scale with the given color
@@ -73,66 +91,11 @@ final class OutputMatrix {
                 out[trg + x] = col;
     }
 
-
-    @FunctionalInterface interface IntFunction {
-        int apply(int a);
+    final void fillBlocks(int col, int blockCount) {
+        final int runWidth = N * blockCount;
+        for (int y = 0, trg = offset; y < N; ++y, trg += outWidth)
+            Arrays.fill(out, trg, trg + runWidth, col);
     }
 
 
 }
-
-
-final class MatrixRotation {
-
-    static final int HALF_BYTE = Byte.SIZE / 2;
-
-    private final int N;
-    private final int Nsq;
-    private final byte[] lookup;
-
-    private MatrixRotation(int N) {
-        this.N = N;
-        this.Nsq = N * N;
-        if (N <= 0 || N >= 16) {
-            throw new IllegalArgumentException("N should be > 0 and < 16");
-        }
-
-        byte[] lookup = new byte[4 * Nsq];
-        for (int rotDeg = 0; rotDeg < 4; rotDeg++) {
-            int offset = rotDeg * Nsq;
-            for (int I = 0; I < N; I++) {
-                for (int J = 0; J < N; J++) {
-                    lookup[offset + I * N + J] =
-                            calc(rotDeg, (byte) ((I << HALF_BYTE) | J));
-                }
-            }
-        }
-        this.lookup = lookup;
-    }
-
-    private static final
-    ConcurrentMap<Integer, MatrixRotation> instance = new ConcurrentHashMap<>();
-
-    static MatrixRotation of(int N) {
-        return instance.computeIfAbsent(N, MatrixRotation::new);
-    }
-
-    private final byte calc(int rotDeg, byte IJ) {
-        if (rotDeg == 0) {
-            return IJ;
-        }
-        byte IJ_old = calc(rotDeg - 1, IJ);
-        int J_old = IJ_old         & 0xF;
-        int I_old = IJ_old >> HALF_BYTE & 0xF;
-
-        int rot_I = N - 1 - J_old;
-        int rot_J =         I_old;
-        return (byte) (rot_I << HALF_BYTE | rot_J);
-    }
-
-    final byte calc(RotationDegree rotDeg, int I, int J) {
-        final int offset = rotDeg.ordinal() * Nsq;
-        return lookup[offset + I * N + J];
-    }
-
-}
@@ -0,0 +1,88 @@
+package io.github.stanio.xbrz;
+
+import static io.github.stanio.xbrz.Color.*;
+
+/**
+ * Byte-interleaved pixel layouts.  The constant names give the order of
+ * the color components in memory, f.e. {@code ABGR} corresponds to
+ * {@code BufferedImage.TYPE_4BYTE_ABGR}, and {@code BGR} &ndash; to
+ * {@code TYPE_3BYTE_BGR}.  The 3-byte formats have no alpha channel and
+ * read as opaque.
+ * <p>
+ * The scaler itself works on packed <abbr>ARGB</abbr> {@code int} values
+ * only.  Pixels in these formats are still converted to <abbr>ARGB</abbr>
+ * and back, just a few rows at a time instead of the whole image, which
+ * saves the intermediate image buffers but not the conversion work.</p>
+ *
+ * @see  Xbrz#scaleImage(PixelFormat, byte[], int, int, int, int, byte[], int, int)
+ */
+public enum PixelFormat {
+
+    ARGB(0, 1, 2, 3),
+    RGBA(3, 0, 1, 2),
+    BGRA(3, 2, 1, 0),
+    ABGR(0, 3, 2, 1),
+    RGB(-1, 0, 1, 2),
+    BGR(-1, 2, 1, 0);
+
+    private final int alpha;
+    private final int red;
+    private final int green;
+    private final int blue;
+    private final int bytesPerPixel;
+
+    private PixelFormat(int alpha, int red, int green, int blue) {
+        this.alpha = alpha;
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        this.bytesPerPixel = (alpha < 0) ? 3 : 4;
+    }
+
+    /**
+     * @return  the number of bytes per pixel
+     */
+    public int bytesPerPixel() {
+        return bytesPerPixel;
+    }
+
+    /**
+     * Converts {@code count} pixels in this format to packed
+     * <abbr>ARGB</abbr> {@code int} values.
+     *
+     * @param   src  source bytes
+     * @param   srcPos  the index of the first source pixel byte
+     * @param   dst  destination pixels
+     * @param   dstPos  the index of the first destination pixel
+     * @param   count  the number of pixels to convert
+     */
+    public void toARGB(byte[] src, int srcPos, int[] dst, int dstPos, int count) {
+        final int a = alpha, r = red, g = green, b = blue;
+        for (int i = 0, p = srcPos; i < count; i++, p += bytesPerPixel) {
+            dst[dstPos + i] = makePixel((a < 0) ? 0xFF : src[p + a] & 0xFF,
+                    src[p + r] & 0xFF, src[p + g] & 0xFF, src[p + b] & 0xFF);
+        }
+    }
+
+    /**
+     * Converts {@code count} packed <abbr>ARGB</abbr> {@code int} pixels
+     * to this format.
+     *
+     * @param   src  source pixels
+     * @param   srcPos  the index of the first source pixel
+     * @param   dst  destination bytes
+     * @param   dstPos  the index of the first destination pixel byte
+     * @param   count  the number of pixels to convert
+     */
+    public void fromARGB(int[] src, int srcPos, byte[] dst, int dstPos, int count) {
+        final int a = alpha, r = red, g = green, b = blue;
+        for (int i = 0, p = dstPos; i < count; i++, p += bytesPerPixel) {
+            final int pix = src[srcPos + i];
+            if (a >= 0) dst[p + a] = (byte) getAlpha(pix);
+            dst[p + r] = (byte) getRed(pix);
+            dst[p + g] = (byte) getGreen(pix);
+            dst[p + b] = (byte) getBlue(pix);
+        }
+    }
+
+}
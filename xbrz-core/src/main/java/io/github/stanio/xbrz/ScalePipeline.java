@@ -0,0 +1,472 @@
+package io.github.stanio.xbrz;
+
+import static io.github.stanio.xbrz.BlendInfo.*;
+import static io.github.stanio.xbrz.BlendType.*;
+import static io.github.stanio.xbrz.Kernel_3x3.*;
+import static io.github.stanio.xbrz.RotationDegree.*;
+
+import java.util.Arrays;
+
+import io.github.stanio.xbrz.Xbrz.Workspace;
+
+/*
+The scaling loop of an Xbrz configuration: the corner preprocessing and the
+pixel blending, which call the color distance and gradient functions for
+most of the pixels.
+*/
+abstract class ScalePipeline {
+
+    static ScalePipeline of(Xbrz xbrz) {
+        return new XbrzPipeline(xbrz);
+    }
+
+    /*
+    Sets up the state for scaling the [xFirst, xLast) source columns, starting
+    at row yFirst, and preprocesses the upper corners of the first row.  With
+    ringRows > 0 the source rows are read from a ring buffer (see Kernel_4x4). */
+    abstract void begin(Workspace state, int[] src, int srcOffset, int srcScanline, int ringRows,
+                        int srcWidth, int srcHeight, int xFirst, int xLast, int yFirst,
+                        int[] trg, int trgOffset, int trgScanline);
+
+    //requires the preceding row being scaled or preprocessed by begin()
+    abstract void scaleRow(Workspace state, int y);
+
+    //scales the map source using its recorded blend shapes
+    abstract void render(Workspace state, BlendMap map,
+                         int[] trg, int trgOffset, int trgScanline);
+
+}
+
+
+final class XbrzPipeline extends ScalePipeline {
+
+    private static final int SHAPE_COLOR_H = 0x8;
+
+    private final Scaler scaler;
+    private final ColorGradient gradient;
+    private final ColorDistance dist;
+    private final ColorDistanceBatch distBatch;
+    private final boolean withAlpha;
+
+    private final ColorDistance blendDist;
+    private final double equalColorTolerance;
+    private final double steepDirectionThreshold;
+
+    private final double centerDirectionBias;
+    private final double dominantDirectionThreshold;
+
+    XbrzPipeline(Xbrz xbrz) {
+        this.scaler = xbrz.scaler;
+        this.gradient = xbrz.scaler.colorGradient();
+        this.dist = xbrz.dist;
+        this.distBatch = xbrz.distBatch;
+        this.withAlpha = xbrz.withAlpha;
+        this.blendDist = xbrz.blendDist;
+        this.equalColorTolerance = xbrz.equalColorTolerance;
+        this.steepDirectionThreshold = xbrz.steepDirectionThreshold;
+        this.centerDirectionBias = xbrz.centerDirectionBias;
+        this.dominantDirectionThreshold = xbrz.dominantDirectionThreshold;
+    }
+
+    private final double dist(int pix1, int pix2) { return dist.calc(pix1, pix2); }
+
+    private final double blendDist(int pix1, int pix2) { return blendDist.calc(pix1, pix2); }
+
+    private final boolean eq(int pix1, int pix2) { return blendDist(pix1, pix2) < equalColorTolerance; }
+
+    //distance from the center to the given position of the rotated view, computed once
+    private final double distE(Kernel_3x3 ker, int pos) {
+        final int index = ker.rotated(pos);
+        final double[] distE = ker.distE;
+        double d = distE[index];
+        if (d != d) // NaN - not computed yet
+            distE[index] = d = blendDist.calc(ker.e(), ker.pixel(index));
+        return d;
+    }
+
+    private final boolean eqE(Kernel_3x3 ker, int pos) { return distE(ker, pos) < equalColorTolerance; }
+
+    //distance of diagonal neighbours (pix1, pix2) starting at column x, computed once
+    private final double dist(double[] cache, int x, int pix1, int pix2) {
+        final int index = x + DistanceCache.OFFSET;
+        double d = cache[index];
+        if (d != d) // NaN - not computed yet
+            cache[index] = d = dist(pix1, pix2);
+        return d;
+    }
+
+    /* detect blend direction
+
+    preprocessing blend result:
+    ---------
+    | F | G |   evaluate corner between F, G, J, K
+    |---+---|   current input pixel is at position F
+    | J | K |
+    ---------   F, G, J, K corners of "BlendType" */
+    private void preProcessCorners(Kernel_4x4 ker, DistanceCache dc, int x, BlendResult result) {
+        result.reset();
+
+        if ((ker.f == ker.g &&
+             ker.j == ker.k) ||
+            (ker.f == ker.j &&
+             ker.g == ker.k))
+            return;
+
+        final double jg = dist(dc.rise_0, x - 1, ker.i, ker.f) + dist(dc.rise_m1, x, ker.f, ker.c) + dist(dc.rise_p1, x, ker.n, ker.k) + dist(dc.rise_0, x + 1, ker.k, ker.h) + centerDirectionBias * dist(dc.rise_0, x, ker.j, ker.g);
+        final double fk = dist(dc.fall_0, x - 1, ker.e, ker.j) + dist(dc.fall_p1, x, ker.j, ker.o) + dist(dc.fall_m1, x, ker.b, ker.g) + dist(dc.fall_0, x + 1, ker.g, ker.l) + centerDirectionBias * dist(dc.fall_0, x, ker.f, ker.k);
+
+        if (jg < fk)
+        {
+            final boolean dominantGradient = dominantDirectionThreshold * jg < fk;
+            if (ker.f != ker.g && ker.f != ker.j)
+                result.blend_f = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+
+            if (ker.k != ker.j && ker.k != ker.g)
+                result.blend_k = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+        }
+        else if (fk < jg)
+        {
+            final boolean dominantGradient = dominantDirectionThreshold * fk < jg;
+            if (ker.j != ker.f && ker.j != ker.k)
+                result.blend_j = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+
+            if (ker.g != ker.f && ker.g != ker.k)
+                result.blend_g = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+        }
+    }
+
+    /*
+    Decides the blending of the four corners of pixel "e", as four 4-bit shapes
+    (ROT_0 in the lowest bits): 0 for none, otherwise the Scaler blend kind + 1,
+    with the SHAPE_COLOR_H bit set if blending the color of "h" instead of "f".
+    The decisions depend on the source pixels only, so they may be recorded
+    and rendered later, at any factor (see BlendMap). */
+    private int blendShapes(Kernel_3x3 ker, byte blendInfo) //result of preprocessing all four corners of pixel "e"
+    {
+        return blendShape(ROT_0,   ker, blendInfo)
+             | blendShape(ROT_90,  ker, blendInfo) << 4
+             | blendShape(ROT_180, ker, blendInfo) << 8
+             | blendShape(ROT_270, ker, blendInfo) << 12;
+    }
+
+    private int blendShape(RotationDegree rotDeg, Kernel_3x3 ker, byte blendInfo)
+    {
+        byte blend = BlendInfo.rotate(blendInfo, rotDeg);
+
+        if (BlendInfo.getBottomR(blend) >= BLEND_NORMAL)
+        {
+            ker.rotDeg(rotDeg);
+
+            final int e = ker.e();
+            final int f = ker.f();
+            final int h = ker.h();
+
+            final int g = ker.g();
+            final int c = ker.c();
+            final int i = ker.i();
+
+            boolean doLineBlend;
+
+            if (BlendInfo.getBottomR(blend) >= BLEND_DOMINANT)
+                doLineBlend = true;
+
+            //make sure there is no second blending in an adjacent rotation for this pixel: handles insular pixels, mario eyes
+            else if (BlendInfo.getTopR(blend) != BLEND_NONE && !eqE(ker, G)) //but support double-blending for 90° corners
+                doLineBlend = false;
+            else if (BlendInfo.getBottomL(blend) != BLEND_NONE && !eqE(ker, C))
+                doLineBlend = false;
+
+            //no full blending for L-shapes; blend corner only (handles "mario mushroom eyes")
+            else if (!eqE(ker, I) && eq(g, h) && eq(h, i) && eq(i, f) && eq(f, c))
+                doLineBlend = false;
+
+            else
+                doLineBlend = true;
+
+            final int px = distE(ker, F) <= distE(ker, H) ? 0 : SHAPE_COLOR_H; //choose most similar color
+
+            if (doLineBlend)
+            {
+                final double fg = blendDist(f, g);
+                final double hc = blendDist(h, c);
+
+                final boolean haveShallowLine = steepDirectionThreshold * fg <= hc && e != g && ker.d() != g;
+                final boolean haveSteepLine   = steepDirectionThreshold * hc <= fg && e != c && ker.b() != c;
+
+                if (haveShallowLine)
+                {
+                    if (haveSteepLine)
+                        return px | Scaler.LINE_STEEP_AND_SHALLOW + 1;
+                    else
+                        return px | Scaler.LINE_SHALLOW + 1;
+                }
+                else
+                {
+                    if (haveSteepLine)
+                        return px | Scaler.LINE_STEEP + 1;
+                    else
+                        return px | Scaler.LINE_DIAGONAL + 1;
+                }
+            }
+            else
+                return px | Scaler.CORNER + 1;
+        }
+        return 0;
+    }
+
+    //blend the four corners of the current pixel "e" as decided by blendShapes()
+    private void blendPixel(Kernel_3x3 ker, OutputMatrix out, int shapes)
+    {
+        blendPixel(ROT_0,   ker, out, shapes);
+        blendPixel(ROT_90,  ker, out, shapes >> 4);
+        blendPixel(ROT_180, ker, out, shapes >> 8);
+        blendPixel(ROT_270, ker, out, shapes >> 12);
+    }
+
+    private void blendPixel(RotationDegree rotDeg, Kernel_3x3 ker, OutputMatrix out, int shape)
+    {
+        shape &= 0xF;
+        if (shape == 0)
+            return;
+
+        ker.rotDeg(rotDeg);
+        out.rotDeg(rotDeg);
+        blend(out, (shape & ~SHAPE_COLOR_H) - 1, (shape & SHAPE_COLOR_H) == 0 ? ker.f() : ker.h());
+    }
+
+    //apply the Scaler blend pattern of the given kind, in the current rotation
+    private void blend(OutputMatrix out, int kind, int col) {
+        final int[] trg = out.target();
+        final int offset = out.offset();
+        final int[] pos = out.pattern(kind);
+        final int[] weight = out.weights(kind);
+        for (int k = 0, w = 0; k < pos.length; k++, w += 2) {
+            final int M = weight[w];
+            final int N = weight[w + 1];
+            final int index = offset + pos[k];
+            trg[index] = (M == N) ? col : gradient.alphaGrad(M, N, trg[index], col);
+        }
+    }
+
+    @Override
+    void begin(Workspace state, int[] src, int srcOffset, int srcScanline, int ringRows,
+               int srcWidth, int srcHeight, int xFirst, int xLast, int yFirst,
+               int[] trg, int trgOffset, int trgScanline) {
+        final int width = xLast - xFirst;
+        final byte[] preProcBuf = state.preProcBuf(width);
+        final Kernel_4x4 ker4 = state.ker4;
+        ker4.init(src, srcWidth, srcHeight, withAlpha);
+        ker4.origin(srcOffset, srcScanline, ringRows, xFirst, xLast, yFirst);
+        state.out.init(scaler, trg, trgScanline);
+        state.out.origin(trgOffset, yFirst);
+
+        final BlendResult res = state.res;
+        final DistanceCache dc = state.dc;
+        dc.init(src, srcWidth, srcHeight,
+                (state.distBatch != null) ? state.distBatch : distBatch);
+        dc.origin(srcOffset, srcScanline, ringRows, xFirst, xLast, yFirst);
+
+        //initialize preprocessing buffer for first row of current stripe: detect upper left and right corner blending
+        {
+            ker4.positionY(yFirst - 1);
+            dc.positionY(yFirst - 1);
+
+            {
+                preProcessCorners(ker4, dc, -1, res);
+                clearAddTopL(preProcBuf, 0, res.blend_k); //set 1st known corner for (xFirst, yFirst)
+            }
+
+            for (int x = 0; x < width; ++x)
+            {
+                ker4.shift();     //shift previous kernel to the left
+                ker4.readDhlp(x); // (xFirst + x, yFirst - 1) is at position F
+
+                preProcessCorners(ker4, dc, x, res);
+                addTopR(preProcBuf, x, res.blend_j); //set 2nd known corner for (xFirst + x, yFirst)
+
+                if (x + 1 < width)
+                    clearAddTopL(preProcBuf, x + 1, res.blend_k); //set 1st known corner for (xFirst + x + 1, yFirst)
+            }
+        }
+    }
+
+    @Override
+    void scaleRow(Workspace state, int y) {
+        final Kernel_4x4 ker4 = state.ker4;
+        final Kernel_3x3 ker3 = ker4.kernel_3x3();
+        final DistanceCache dc = state.dc;
+        final OutputMatrix out = state.out;
+        final BlendResult res = state.res;
+        final byte[] preProcBuf = state.preProcBuf;
+        final int width = state.width;
+        //recording the blend shapes for a BlendMap, instead of writing output
+        final short[] shapes = state.shapes;
+        final int shapesRow = y * width;
+        //writing the outputs of several factors, instead of the state one
+        final OutputMatrix[] outs = state.outs;
+
+        out.positionY(y);
+        if (outs != null)
+            positionY(outs, y);
+        //initialize at position x = -1 (relative to xFirst)
+        ker4.positionY(y);
+        dc.positionY(y);
+
+        byte blend_xy1; //corner blending for current (x, y + 1) position
+        {
+            preProcessCorners(ker4, dc, -1, res);
+            blend_xy1 = clearAddTopL(res.blend_k); //set 1st known corner for (xFirst, y + 1) and buffer for use on next column
+
+            addBottomL(preProcBuf, 0, res.blend_g); //set 3rd known corner for (xFirst, y)
+        }
+
+        //left edge, interior and right edge segments of the row, the interior
+        //reading the kernel without border checks
+        final int interiorFirst = Math.max(0, Math.min(ker4.interiorFirst(), width));
+        final int interiorEnd = Math.max(interiorFirst, Math.min(ker4.interiorEnd(), width));
+        int x = 0;
+        for (int segment = 0; segment < 3; ++segment)
+        {
+            final boolean interior = (segment == 1);
+            final int segmentEnd = (segment == 0) ? interiorFirst
+                                                  : interior ? interiorEnd : width;
+
+            //a uniform run may end past segmentEnd
+            for (; x < segmentEnd; ++x, out.incrementX())
+            {
+                ker4.shift();     //shift previous kernel to the left
+                if (interior)
+                    ker4.readDhlpInterior(x);
+                else
+                    ker4.readDhlp(x); // (xFirst + x, y) is at position F
+
+                if (ker4.uniform())
+                {
+                    //flat region: no corners to blend while the kernel remains uniform
+                    final int xEnd = ker4.uniformRunEnd(x);
+                    final int runLength = xEnd - x;
+                    if (outs != null)
+                        fillBlocks(outs, ker4.f, runLength);
+                    else if (shapes == null)
+                        out.fillBlocks(ker4.f, runLength);
+                    Arrays.fill(preProcBuf, x, xEnd, (byte) 0);
+                    blend_xy1 = 0;
+
+                    out.incrementX(runLength - 1);
+                    x = xEnd - 1; //kernel values at (xEnd - 1, y) are the same
+                    continue;
+                }
+
+                //evaluate the four corners on bottom-right of current pixel
+                byte blend_xy = preProcBuf[x]; //for current (x, y) position
+                {
+                    preProcessCorners(ker4, dc, x, res);
+                    blend_xy = addBottomR(blend_xy, res.blend_f); //all four corners of (x, y) have been determined at this point due to processing sequence!
+
+                    blend_xy1 = addTopR(blend_xy1, res.blend_j); //set 2nd known corner for (x, y + 1)
+                    preProcBuf[x] = blend_xy1; //store on current buffer position for use on next row
+
+                    if (x + 1 < width)
+                    {
+                        //blend_xy1 -> blend_x1y1
+                        blend_xy1 = clearAddTopL(res.blend_k); //set 1st known corner for (x + 1, y + 1) and buffer for use on next column
+
+                        addBottomL(preProcBuf, x + 1, res.blend_g); //set 3rd known corner for (x + 1, y)
+                    }
+                }
+
+                //blend all four corners of current pixel
+                int shape = 0;
+                if (BlendInfo.blendingNeeded(blend_xy))
+                {
+                    ker3.load();
+                    shape = blendShapes(ker3, blend_xy);
+                }
+
+                if (outs != null)
+                    fillBlock(outs, ker4.f, ker3, shape);
+                else if (shapes != null)
+                    shapes[shapesRow + x] = (short) shape;
+                else
+                {
+                    out.fillBlock(ker4.f);
+                    if (shape != 0)
+                        blendPixel(ker3, out, shape);
+                }
+            }
+        }
+    }
+
+    @Override
+    void render(Workspace state, BlendMap map, int[] trg, int trgOffset, int trgScanline) {
+        final Kernel_4x4 ker4 = state.ker4;
+        final Kernel_3x3 ker3 = ker4.kernel_3x3();
+        final OutputMatrix out = state.out;
+        final short[] shapes = map.shapes;
+        final int width = map.width;
+        ker4.init(map.pixels, width, map.height, withAlpha);
+        out.init(scaler, trg, trgScanline);
+        out.origin(trgOffset, 0);
+
+        for (int y = 0; y < map.height; ++y)
+        {
+            out.positionY(y);
+            ker4.positionY(y);
+            final int interiorFirst = ker4.interiorFirst();
+            final int interiorEnd = ker4.interiorEnd();
+            for (int x = 0, i = y * width; x < width; ++x, ++i, out.incrementX())
+            {
+                ker4.shift();
+                if (x >= interiorFirst && x < interiorEnd)
+                    ker4.readDhlpInterior(x);
+                else
+                    ker4.readDhlp(x);
+
+                if (ker4.uniform())
+                {
+                    //flat region, no blend shapes recorded (see scaleRow())
+                    final int runLength = ker4.uniformRunEnd(x) - x;
+                    out.fillBlocks(ker4.f, runLength);
+                    out.incrementX(runLength - 1);
+                    i += runLength - 1;
+                    x += runLength - 1;
+                    continue;
+                }
+
+                out.fillBlock(ker4.f);
+                final int shape = shapes[i];
+                if (shape != 0)
+                {
+                    ker3.load();
+                    blendPixel(ker3, out, shape);
+                }
+            }
+        }
+    }
+
+    //the multi-factor outputs of Xbrz.scaleAll(), written in the scaleRow() pass
+
+    private static void positionY(OutputMatrix[] outs, int y) {
+        for (OutputMatrix out : outs)
+            out.positionY(y);
+    }
+
+    private static void fillBlocks(OutputMatrix[] outs, int col, int blockCount) {
+        for (OutputMatrix out : outs)
+        {
+            out.fillBlocks(col, blockCount);
+            out.incrementX(blockCount);
+        }
+    }
+
+    private void fillBlock(OutputMatrix[] outs, int col, Kernel_3x3 ker, int shape) {
+        for (OutputMatrix out : outs)
+        {
+            out.fillBlock(col);
+            if (shape != 0)
+                blendPixel(ker, out, shape);
+            out.incrementX();
+        }
+    }
+
+}
@@ -4,384 +4,345 @@ import static io.github.stanio.xbrz.Color.*;
 import static io.github.stanio.xbrz.ColorGradient.gradientARGB;
 import static io.github.stanio.xbrz.ColorGradient.gradientRGB;
 
-interface Scaler {
-
-    int scale();
-
-    void blendLineShallow(int col, OutputMatrix out);
-
-    void blendLineSteep(int col, OutputMatrix out);
-
-    void blendLineSteepAndShallow(int col, OutputMatrix out);
-
-    void blendLineDiagonal(int col, OutputMatrix out);
-
-    void blendCorner(int col, OutputMatrix out);
-
-    static Scaler forFactor(int factor, boolean withAlpha) {
-        switch (factor) {
-        case 2: return new Scaler2x(withAlpha);
-        case 3: return new Scaler3x(withAlpha);
-        case 4: return new Scaler4x(withAlpha);
-        case 5: return new Scaler5x(withAlpha);
-        case 6: return new Scaler6x(withAlpha);
-        default:
-            throw new IllegalArgumentException("Illegal scaling factor: " + factor);
-        }
-    }
-
-}
-
-
-abstract class AbstractScaler implements Scaler {
-
-    protected final int scale;
-
+/*
+Blend patterns of the supported scaling factors, as data.  A pattern lists the
+{ I, J, M, N } operations for a blend kind in order of application: blend the
+color with opacity M / N over the current value of the (I, J) output pixel,
+or just set it when given { I, J } only.  The (I, J) positions are of the
+unrotated output block and get resolved to output offsets for all rotations,
+once per output scanline (see OutputMatrix.init()).
+*/
+final class Scaler {
+
+    static final int LINE_SHALLOW = 0;
+    static final int LINE_STEEP = 1;
+    static final int LINE_STEEP_AND_SHALLOW = 2;
+    static final int LINE_DIAGONAL = 3;
+    static final int CORNER = 4;
+
+    private static final int BLEND_KINDS = 5;
+    private static final int ROTATIONS = RotationDegree.values().length;
+
+    private final int scale;
     private final ColorGradient colorGradient;
+    private final int[][][] patterns;
+    //[kind] M, N pairs, M == N for set
+    private final int[][] weights;
 
-    protected AbstractScaler(int scale, boolean withAlpha) {
-        this(scale, withAlpha ? gradientARGB() : gradientRGB());
-    }
-
-    protected AbstractScaler(int scale, ColorGradient colorGradient) {
+    private Scaler(int scale, ColorGradient colorGradient, int[][][] patterns) {
         this.scale = scale;
         this.colorGradient = colorGradient;
+        this.patterns = patterns;
+        this.weights = new int[BLEND_KINDS][];
+        for (int kind = 0; kind < BLEND_KINDS; kind++) {
+            final int[][] ops = patterns[kind];
+            final int[] w = new int[2 * ops.length];
+            for (int k = 0; k < ops.length; k++) {
+                boolean set = ops[k].length == 2;
+                w[2 * k] = set ? 1 : ops[k][2];
+                w[2 * k + 1] = set ? 1 : ops[k][3];
+            }
+            weights[kind] = w;
+        }
     }
 
-    @Override
-    public final int scale() {
-        return scale;
-    }
-
-    protected final int alphaGrad(int M, int N, int pixBack, int pixFront) {
-        return colorGradient.alphaGrad(M, N, pixBack, pixFront);
-    }
-
-}
-
-
-class Scaler2x extends AbstractScaler {
-
-    public Scaler2x(boolean withAlpha) {
-        super(2, withAlpha);
-    }
-
-    @Override
-    public void blendLineShallow(int col, OutputMatrix out) {
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-    }
-
-    @Override
-    public void blendLineSteep(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-    }
-
-    @Override
-    public void blendLineSteepAndShallow(int col, OutputMatrix out) {
-        out.set(1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(0, 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(1, 1, ref -> alphaGrad(5, 6, ref, col)); // [!] fixes 7/8 used in xBR
-    }
-
-    @Override
-    public void blendLineDiagonal(int col, OutputMatrix out) {
-        out.set(1, 1, ref -> alphaGrad(1, 2, ref, col));
-    }
-
-    @Override
-    public void blendCorner(int col, OutputMatrix out) {
-        // model a round corner
-        out.set(1, 1, ref -> alphaGrad(21, 100, ref, col)); // exact: 1 - pi/4 = 0.2146018366
-    }
-
-}
-
-
-class Scaler3x extends AbstractScaler {
-
-    public Scaler3x(boolean withAlpha) {
-        super(3, withAlpha);
-    }
-
-    @Override
-    public void blendLineShallow(int col, OutputMatrix out) {
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 1, 2, col);
-    }
-
-    @Override
-    public void blendLineSteep(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(2, scale - 1, col);
-    }
-
-    @Override
-    public void blendLineSteepAndShallow(int col, OutputMatrix out) {
-        out.set(2, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(0, 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(1, 2, ref -> alphaGrad(3, 4, ref, col));
-        out.set(2, 2, col);
-    }
-
-    @Override
-    public void blendLineDiagonal(int col, OutputMatrix out) {
-        out.set(1, 2, ref -> alphaGrad(1, 8, ref, col)); // conflict with other rotations for this odd scale
-        out.set(2, 1, ref -> alphaGrad(1, 8, ref, col));
-        out.set(2, 2, ref -> alphaGrad(7, 8, ref, col)); //
-    }
-
-    @Override
-    public void blendCorner(int col, OutputMatrix out) {
-        // model a round corner
-        out.set(2, 2, ref -> alphaGrad(45, 100, ref, col)); // exact: 0.4545939598
-        //out.set(2, 1, ref -> alphaGrad(7, 256, ref, col)); // 0.02826017254 -> negligible + avoid conflicts with other rotations for this odd scale
-        //out.set(1, 2, ref -> alphaGrad(7, 256, ref, col)); // 0.02826017254
-    }
-
-}
-
-
-class Scaler4x extends AbstractScaler {
-
-    public Scaler4x(boolean withAlpha) {
-        super(4, withAlpha);
-    }
-
-    @Override
-    public void blendLineShallow(int col, OutputMatrix out) {
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 2, 3, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(scale - 1, 2, col);
-        out.set(scale - 1, 3, col);
-    }
-
-    @Override
-    public void blendLineSteep(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(3, scale - 2, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(2, scale - 1, col);
-        out.set(3, scale - 1, col);
-    }
-
-    @Override
-    public void blendLineSteepAndShallow(int col, OutputMatrix out) {
-        out.set(3, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(1, 3, ref -> alphaGrad(3, 4, ref, col));
-        out.set(3, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(0, 3, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(2, 2, ref -> alphaGrad(1, 3, ref, col)); //[!] fixes 1/4 used in xBR
-
-        out.set(3, 3, col);
-        out.set(3, 2, col);
-        out.set(2, 3, col);
-    }
-
-    @Override
-    public void blendLineDiagonal(int col, OutputMatrix out) {
-        out.set(scale - 1, scale / 2    , ref -> alphaGrad(1, 2, ref, col));
-        out.set(scale - 2, scale / 2 + 1, ref -> alphaGrad(1, 2, ref, col));
-        out.set(scale - 1, scale - 1, col);
-    }
-
-    @Override
-    public void blendCorner(int col, OutputMatrix out) {
-        // model a round corner
-        out.set(3, 3, ref -> alphaGrad(68, 100, ref, col)); // exact: 0.6848532563
-        out.set(3, 2, ref -> alphaGrad( 9, 100, ref, col)); // 0.08677704501
-        out.set(2, 3, ref -> alphaGrad( 9, 100, ref, col)); // 0.08677704501
-    }
-
-}
-
-
-class Scaler5x extends AbstractScaler {
-
-    public Scaler5x(boolean withAlpha) {
-        super(5, withAlpha);
-    }
-
-    @Override
-    public void blendLineShallow(int col, OutputMatrix out) {
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 3, 4, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 2, 3, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(scale - 1, 2, col);
-        out.set(scale - 1, 3, col);
-        out.set(scale - 1, 4, col);
-        out.set(scale - 2, 4, col);
-    }
-
-    @Override
-    public void blendLineSteep(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(4, scale - 3, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(3, scale - 2, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(2, scale - 1, col);
-        out.set(3, scale - 1, col);
-        out.set(4, scale - 1, col);
-        out.set(4, scale - 2, col);
-    }
-
-    @Override
-    public void blendLineSteepAndShallow(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(3, 3, ref -> alphaGrad(2, 3, ref, col));
-
-        out.set(2, scale - 1, col);
-        out.set(3, scale - 1, col);
-        out.set(4, scale - 1, col);
-
-        out.set(scale - 1, 2, col);
-        out.set(scale - 1, 3, col);
-    }
-
-    @Override
-    public void blendLineDiagonal(int col, OutputMatrix out) {
-        out.set(scale - 1, scale / 2    , ref -> alphaGrad(1, 8, ref, col)); //conflict with other rotations for this odd scale
-        out.set(scale - 2, scale / 2 + 1, ref -> alphaGrad(1, 8, ref, col));
-        out.set(scale - 3, scale / 2 + 2, ref -> alphaGrad(1, 8, ref, col)); //
-
-        out.set(4, 3, ref -> alphaGrad(7, 8, ref, col));
-        out.set(3, 4, ref -> alphaGrad(7, 8, ref, col));
-
-        out.set(4, 4, col);
-    }
-
-    @Override
-    public void blendCorner(int col, OutputMatrix out) {
-        // model a round corner
-        out.set(4, 4, ref -> alphaGrad(86, 100, ref, col)); // exact: 0.8631434088
-        out.set(4, 3, ref -> alphaGrad(23, 100, ref, col)); // 0.2306749731
-        out.set(3, 4, ref -> alphaGrad(23, 100, ref, col)); // 0.2306749731
-        //out.set(4, 2, ref -> alphaGrad(1, 64, ref, col)); // 0.01676812367 -> negligible + avoid conflicts with other rotations for this odd scale
-        //out.set(2, 4, ref -> alphaGrad(1, 64, ref, col)); // 0.01676812367
-    }
-
-}
-
-
-class Scaler6x extends AbstractScaler {
-
-    public Scaler6x(boolean withAlpha) {
-        super(6, withAlpha);
-    }
-
-    @Override
-    public void blendLineShallow(int col, OutputMatrix out) {
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 3, 4, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 2, 3, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 3, 5, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(scale - 1, 2, col);
-        out.set(scale - 1, 3, col);
-        out.set(scale - 1, 4, col);
-        out.set(scale - 1, 5, col);
-
-        out.set(scale - 2, 4, col);
-        out.set(scale - 2, 5, col);
-    }
-
-    @Override
-    public void blendLineSteep(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(4, scale - 3, ref -> alphaGrad(1, 4, ref, col));
-
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(3, scale - 2, ref -> alphaGrad(3, 4, ref, col));
-        out.set(5, scale - 3, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(2, scale - 1, col);
-        out.set(3, scale - 1, col);
-        out.set(4, scale - 1, col);
-        out.set(5, scale - 1, col);
-
-        out.set(4, scale - 2, col);
-        out.set(5, scale - 2, col);
-    }
-
-    @Override
-    public void blendLineSteepAndShallow(int col, OutputMatrix out) {
-        out.set(0, scale - 1, ref -> alphaGrad(1, 4, ref, col));
-        out.set(2, scale - 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(1, scale - 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(3, scale - 2, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(scale - 1, 0, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 2, 2, ref -> alphaGrad(1, 4, ref, col));
-        out.set(scale - 1, 1, ref -> alphaGrad(3, 4, ref, col));
-        out.set(scale - 2, 3, ref -> alphaGrad(3, 4, ref, col));
-
-        out.set(2, scale - 1, col);
-        out.set(3, scale - 1, col);
-        out.set(4, scale - 1, col);
-        out.set(5, scale - 1, col);
-
-        out.set(4, scale - 2, col);
-        out.set(5, scale - 2, col);
-
-        out.set(scale - 1, 2, col);
-        out.set(scale - 1, 3, col);
+    static Scaler forFactor(int factor, boolean withAlpha) {
+        return forFactor(factor, withAlpha ? gradientARGB() : gradientRGB());
     }
 
-    @Override
-    public void blendLineDiagonal(int col, OutputMatrix out) {
-        out.set(scale - 1, scale / 2    , ref -> alphaGrad(1, 2, ref, col));
-        out.set(scale - 2, scale / 2 + 1, ref -> alphaGrad(1, 2, ref, col));
-        out.set(scale - 3, scale / 2 + 2, ref -> alphaGrad(1, 2, ref, col));
-
-        out.set(scale - 2, scale - 1, col);
-        out.set(scale - 1, scale - 1, col);
-        out.set(scale - 1, scale - 2, col);
+    static Scaler forFactor(int factor, ColorGradient colorGradient) {
+        switch (factor) {
+        case 2: return new Scaler(2, colorGradient, PATTERNS_2X);
+        case 3: return new Scaler(3, colorGradient, PATTERNS_3X);
+        case 4: return new Scaler(4, colorGradient, PATTERNS_4X);
+        case 5: return new Scaler(5, colorGradient, PATTERNS_5X);
+        case 6: return new Scaler(6, colorGradient, PATTERNS_6X);
+        default:
+            throw new IllegalArgumentException("Illegal scaling factor: " + factor);
+        }
     }
 
-    @Override
-    public void blendCorner(int col, OutputMatrix out) {
-        // model a round corner
-        out.set(5, 5, ref -> alphaGrad(97, 100, ref, col)); // exact: 0.9711013910
-        out.set(4, 5, ref -> alphaGrad(42, 100, ref, col)); // 0.4236372243
-        out.set(5, 4, ref -> alphaGrad(42, 100, ref, col)); // 0.4236372243
-        out.set(5, 3, ref -> alphaGrad( 6, 100, ref, col)); // 0.05652034508
-        out.set(3, 5, ref -> alphaGrad( 6, 100, ref, col)); // 0.05652034508
+    int scale() {
+        return scale;
     }
 
+    ColorGradient colorGradient() {
+        return colorGradient;
+    }
+
+    //[kind] M, N pairs of the pattern operations
+    int[][] weights() {
+        return weights;
+    }
+
+    //[kind * ROTATIONS + rotation] offsets of the pattern operations from the
+    //top-left of the output block
+    int[][] offsets(int outWidth) {
+        final int[][] offsets = new int[BLEND_KINDS * ROTATIONS][];
+        for (int rot = 0; rot < ROTATIONS; rot++) {
+            for (int kind = 0; kind < BLEND_KINDS; kind++) {
+                final int[][] ops = patterns[kind];
+                final int[] pos = new int[ops.length];
+                for (int k = 0; k < ops.length; k++) {
+                    int I = ops[k][0];
+                    int J = ops[k][1];
+                    for (int r = 0; r < rot; r++) { //rotate clock-wise by 90 degrees
+                        final int rot_I = scale - 1 - J;
+                        J = I;
+                        I = rot_I;
+                    }
+                    pos[k] = J + I * outWidth;
+                }
+                offsets[kind * ROTATIONS + rot] = pos;
+            }
+        }
+        return offsets;
+    }
+
+    private static final int[][][] PATTERNS_2X = {
+        { // LINE_SHALLOW
+            { 1, 0, 1, 4 },
+            { 1, 1, 3, 4 },
+        },
+        { // LINE_STEEP
+            { 0, 1, 1, 4 },
+            { 1, 1, 3, 4 },
+        },
+        { // LINE_STEEP_AND_SHALLOW
+            { 1, 0, 1, 4 },
+            { 0, 1, 1, 4 },
+            { 1, 1, 5, 6 }, // [!] fixes 7/8 used in xBR
+        },
+        { // LINE_DIAGONAL
+            { 1, 1, 1, 2 },
+        },
+        { // CORNER
+            // model a round corner
+            { 1, 1, 21, 100 }, // exact: 1 - pi/4 = 0.2146018366
+        },
+    };
+
+    private static final int[][][] PATTERNS_3X = {
+        { // LINE_SHALLOW
+            { 2, 0, 1, 4 },
+            { 1, 2, 1, 4 },
+
+            { 2, 1, 3, 4 },
+            { 2, 2 },
+        },
+        { // LINE_STEEP
+            { 0, 2, 1, 4 },
+            { 2, 1, 1, 4 },
+
+            { 1, 2, 3, 4 },
+            { 2, 2 },
+        },
+        { // LINE_STEEP_AND_SHALLOW
+            { 2, 0, 1, 4 },
+            { 0, 2, 1, 4 },
+            { 2, 1, 3, 4 },
+            { 1, 2, 3, 4 },
+            { 2, 2 },
+        },
+        { // LINE_DIAGONAL
+            { 1, 2, 1, 8 }, // conflict with other rotations for this odd scale
+            { 2, 1, 1, 8 },
+            { 2, 2, 7, 8 }, //
+        },
+        { // CORNER
+            // model a round corner
+            { 2, 2, 45, 100 }, // exact: 0.4545939598
+            //{ 2, 1, 7, 256 }, // 0.02826017254 -> negligible + avoid conflicts with other rotations for this odd scale
+            //{ 1, 2, 7, 256 }, // 0.02826017254
+        },
+    };
+
+    private static final int[][][] PATTERNS_4X = {
+        { // LINE_SHALLOW
+            { 3, 0, 1, 4 },
+            { 2, 2, 1, 4 },
+
+            { 3, 1, 3, 4 },
+            { 2, 3, 3, 4 },
+
+            { 3, 2 },
+            { 3, 3 },
+        },
+        { // LINE_STEEP
+            { 0, 3, 1, 4 },
+            { 2, 2, 1, 4 },
+
+            { 1, 3, 3, 4 },
+            { 3, 2, 3, 4 },
+
+            { 2, 3 },
+            { 3, 3 },
+        },
+        { // LINE_STEEP_AND_SHALLOW
+            { 3, 1, 3, 4 },
+            { 1, 3, 3, 4 },
+            { 3, 0, 1, 4 },
+            { 0, 3, 1, 4 },
+
+            { 2, 2, 1, 3 }, //[!] fixes 1/4 used in xBR
+
+            { 3, 3 },
+            { 3, 2 },
+            { 2, 3 },
+        },
+        { // LINE_DIAGONAL
+            { 3, 2, 1, 2 },
+            { 2, 3, 1, 2 },
+            { 3, 3 },
+        },
+        { // CORNER
+            // model a round corner
+            { 3, 3, 68, 100 }, // exact: 0.6848532563
+            { 3, 2, 9, 100 }, // 0.08677704501
+            { 2, 3, 9, 100 }, // 0.08677704501
+        },
+    };
+
+    private static final int[][][] PATTERNS_5X = {
+        { // LINE_SHALLOW
+            { 4, 0, 1, 4 },
+            { 3, 2, 1, 4 },
+            { 2, 4, 1, 4 },
+
+            { 4, 1, 3, 4 },
+            { 3, 3, 3, 4 },
+
+            { 4, 2 },
+            { 4, 3 },
+            { 4, 4 },
+            { 3, 4 },
+        },
+        { // LINE_STEEP
+            { 0, 4, 1, 4 },
+            { 2, 3, 1, 4 },
+            { 4, 2, 1, 4 },
+
+            { 1, 4, 3, 4 },
+            { 3, 3, 3, 4 },
+
+            { 2, 4 },
+            { 3, 4 },
+            { 4, 4 },
+            { 4, 3 },
+        },
+        { // LINE_STEEP_AND_SHALLOW
+            { 0, 4, 1, 4 },
+            { 2, 3, 1, 4 },
+            { 1, 4, 3, 4 },
+
+            { 4, 0, 1, 4 },
+            { 3, 2, 1, 4 },
+            { 4, 1, 3, 4 },
+
+            { 3, 3, 2, 3 },
+
+            { 2, 4 },
+            { 3, 4 },
+            { 4, 4 },
+
+            { 4, 2 },
+            { 4, 3 },
+        },
+        { // LINE_DIAGONAL
+            { 4, 2, 1, 8 }, //conflict with other rotations for this odd scale
+            { 3, 3, 1, 8 },
+            { 2, 4, 1, 8 }, //
+
+            { 4, 3, 7, 8 },
+            { 3, 4, 7, 8 },
+
+            { 4, 4 },
+        },
+        { // CORNER
+            // model a round corner
+            { 4, 4, 86, 100 }, // exact: 0.8631434088
+            { 4, 3, 23, 100 }, // 0.2306749731
+            { 3, 4, 23, 100 }, // 0.2306749731
+            //{ 4, 2, 1, 64 }, // 0.01676812367 -> negligible + avoid conflicts with other rotations for this odd scale
+            //{ 2, 4, 1, 64 }, // 0.01676812367
+        },
+    };
+
+    private static final int[][][] PATTERNS_6X = {
+        { // LINE_SHALLOW
+            { 5, 0, 1, 4 },
+            { 4, 2, 1, 4 },
+            { 3, 4, 1, 4 },
+
+            { 5, 1, 3, 4 },
+            { 4, 3, 3, 4 },
+            { 3, 5, 3, 4 },
+
+            { 5, 2 },
+            { 5, 3 },
+            { 5, 4 },
+            { 5, 5 },
+
+            { 4, 4 },
+            { 4, 5 },
+        },
+        { // LINE_STEEP
+            { 0, 5, 1, 4 },
+            { 2, 4, 1, 4 },
+            { 4, 3, 1, 4 },
+
+            { 1, 5, 3, 4 },
+            { 3, 4, 3, 4 },
+            { 5, 3, 3, 4 },
+
+            { 2, 5 },
+            { 3, 5 },
+            { 4, 5 },
+            { 5, 5 },
+
+            { 4, 4 },
+            { 5, 4 },
+        },
+        { // LINE_STEEP_AND_SHALLOW
+            { 0, 5, 1, 4 },
+            { 2, 4, 1, 4 },
+            { 1, 5, 3, 4 },
+            { 3, 4, 3, 4 },
+
+            { 5, 0, 1, 4 },
+            { 4, 2, 1, 4 },
+            { 5, 1, 3, 4 },
+            { 4, 3, 3, 4 },
+
+            { 2, 5 },
+            { 3, 5 },
+            { 4, 5 },
+            { 5, 5 },
+
+            { 4, 4 },
+            { 5, 4 },
+
+            { 5, 2 },
+            { 5, 3 },
+        },
+        { // LINE_DIAGONAL
+            { 5, 3, 1, 2 },
+            { 4, 4, 1, 2 },
+            { 3, 5, 1, 2 },
+
+            { 4, 5 },
+            { 5, 5 },
+            { 5, 4 },
+        },
+        { // CORNER
+            // model a round corner
+            { 5, 5, 97, 100 }, // exact: 0.9711013910
+            { 4, 5, 42, 100 }, // 0.4236372243
+            { 5, 4, 42, 100 }, // 0.4236372243
+            { 5, 3, 6, 100 }, // 0.05652034508
+            { 3, 5, 6, 100 }, // 0.05652034508
+        },
+    };
 }
 
 
@@ -397,19 +358,40 @@ interface ColorGradient {
         return new ColorGradientARGB();
     }
 
+    static ColorGradient gradientARGBPremultiplied() {
+        return new ColorGradientARGBPremultiplied();
+    }
+
 }
 
 
 class ColorGradientRGB implements ColorGradient {
 
-    private static int calcColor(int M, int N, int colFront, int colBack) {
-        return (colFront * M + colBack * (N - M)) / N;
+    /*
+    Multiply-shift reciprocals of the gradient denominators N (<= 256) used by
+    the scalers: ceil(2^32 / N).  (x * RECIPROCAL[N]) >>> 32 == x / N exactly
+    for 0 <= x < 2^16, as the rounding error stays below 2^16 * N / 2^32 / N,
+    much less than the 1 / N distance of x / N to the next integer. */
+    private static final long[] RECIPROCAL = new long[257];
+    static {
+        for (int N = 1; N < RECIPROCAL.length; N++) {
+            RECIPROCAL[N] = ((1L << 32) + N - 1) / N;
+        }
+    }
+
+    //x / N, for 0 <= x <= 255 * N, without division
+    static int divide(int x, int N) {
+        return (int) ((x * RECIPROCAL[N]) >>> 32);
+    }
+
+    static int calcColor(int M, int N, int colFront, int colBack) {
+        return divide(colFront * M + colBack * (N - M), N);
     }
 
     @Override
     // blend front color with opacity M / N over opaque background: https://en.wikipedia.org/wiki/Alpha_compositing#Alpha_blending
     public int alphaGrad(int M, int N, int pixBack, int pixFront) {
-        //assert (0 < M && M < N && N <= 1000);
+        //assert (0 < M && M < N && N <= 256);
 
         return makePixel(calcColor(M, N, getRed(pixFront), getRed(pixBack)),
                          calcColor(M, N, getGreen(pixFront), getGreen(pixBack)),
@@ -427,7 +409,19 @@ class ColorGradientARGB implements ColorGradient {
     @Override
     // find intermediate color between two colors with alpha channels (=> NO alpha blending!!!)
     public int alphaGrad(int M, int N, int pixBack, int pixFront) {
-        //assert (0 < M && M < N && N <= 1000);
+        //assert (0 < M && M < N && N <= 256);
+
+        final int alpha = getAlpha(pixFront);
+        if (alpha == getAlpha(pixBack)) {
+            // the alpha weights cancel out: (col * alpha * M + ...) / (alpha * N)
+            if (alpha == 0)
+                return 0;
+
+            return makePixel(alpha,
+                             ColorGradientRGB.calcColor(M, N, getRed(pixFront), getRed(pixBack)),
+                             ColorGradientRGB.calcColor(M, N, getGreen(pixFront), getGreen(pixBack)),
+                             ColorGradientRGB.calcColor(M, N, getBlue(pixFront), getBlue(pixBack)));
+        }
 
         final int weightFront = getAlpha(pixFront) * M;
         final int weightBack = getAlpha(pixBack) * (N - M);
@@ -442,3 +436,23 @@ class ColorGradientARGB implements ColorGradient {
     }
 
 }
+
+class ColorGradientARGBPremultiplied implements ColorGradient {
+
+    private static int calcColor(int M, int N, int colFront, int colBack) {
+        return ColorGradientRGB.calcColor(M, N, colFront, colBack);
+    }
+
+    @Override
+    // premultiplied color channels weight themselves by their alpha, so the
+    // intermediate color is a plain weighted average of all four channels
+    public int alphaGrad(int M, int N, int pixBack, int pixFront) {
+        //assert (0 < M && M < N && N <= 256);
+
+        return makePixel(calcColor(M, N, getAlpha(pixFront), getAlpha(pixBack)),
+                         calcColor(M, N, getRed(pixFront), getRed(pixBack)),
+                         calcColor(M, N, getGreen(pixFront), getGreen(pixBack)),
+                         calcColor(M, N, getBlue(pixFront), getBlue(pixBack)));
+    }
+
+}
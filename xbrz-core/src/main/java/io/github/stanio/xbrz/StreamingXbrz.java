@@ -0,0 +1,212 @@
+package io.github.stanio.xbrz;
+
+import java.nio.IntBuffer;
+import java.util.Objects;
+
+/**
+ * Scales an image pushed row by row, passing on the scaled rows as soon
+ * as they are complete.
+ * <p>
+ * Only the source rows needed for the scaling context and a single block
+ * of {@code factor} target rows are kept in memory, making it possible to
+ * pipe decoding, scaling and encoding of very tall images:</p>
+ * <pre>
+ *     Xbrz xbrz = new Xbrz(factor);
+ *     StreamingXbrz scaler = new StreamingXbrz(xbrz, srcWidth, srcHeight,
+ *             (pixels, y) -&gt; encoder.writeRows(pixels, y, xbrz.factor()));
+ *     for (int y = 0; y &lt; srcHeight; y++) {
+ *         scaler.push(decoder.readRow(y), 0);
+ *     }</pre>
+ * <p>
+ * The result is the same as scaling the whole image with the given
+ * {@code Xbrz} instance.  {@code StreamingXbrz} instances are not
+ * thread-safe.</p>
+ *
+ * @see  Xbrz#scaleImage(int[], int[], int, int)
+ */
+public final class StreamingXbrz {
+
+
+    /**
+     * Receives the scaled image rows.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+
+        /**
+         * Accepts a block of {@code factor} target rows corresponding to
+         * a single source row.
+         *
+         * @param   pixels  the <abbr>ARGB</abbr> pixels of the target rows,
+         *          {@code srcWidth * factor} pixels per row.  The buffer is
+         *          reused after this method returns.
+         * @param   y  the index of the first target row
+         */
+        void accept(int[] pixels, int y);
+
+    } // interface RowSink
+
+
+    //source rows y - 1, y, y + 1, y + 2 of the current row y
+    static final int RING_ROWS = 4;
+
+    private final Xbrz xbrz;
+    private final int srcWidth;
+    private final int srcHeight;
+    private final RowSink sink;
+
+    private final int[] srcRows;
+    private final int[] trgRows;
+    private final Xbrz.Workspace state;
+
+    private int rowsPushed;
+    private int rowsScaled;
+    private boolean started;
+
+    /**
+     * Constructs a new streaming scaler session using a new workspace.
+     *
+     * @param   xbrz  the scaler to apply
+     * @param   srcWidth  the source image width
+     * @param   srcHeight  the source image height
+     * @param   sink  receives the scaled rows
+     * @throws  IllegalArgumentException  if {@code srcWidth} or
+     *          {@code srcHeight} is negative
+     * @throws  OutOfMemoryError  if the target row size exceeds
+     *          implementation limits
+     * @see     #StreamingXbrz(Xbrz, Xbrz.Workspace, int, int, RowSink)
+     */
+    public StreamingXbrz(Xbrz xbrz, int srcWidth, int srcHeight, RowSink sink) {
+        this(xbrz, new Xbrz.Workspace(), srcWidth, srcHeight, sink);
+    }
+
+    /**
+     * Constructs a new streaming scaler session using the given workspace.
+     * <p>
+     * The workspace is in use until the session is complete, and it must
+     * not be used by other scaling operations meanwhile.  A session with
+     * {@code srcWidth} of 0 passes on empty target rows.</p>
+     *
+     * @param   xbrz  the scaler to apply
+     * @param   workspace  the workspace to use
+     * @param   srcWidth  the source image width
+     * @param   srcHeight  the source image height
+     * @param   sink  receives the scaled rows
+     * @throws  IllegalArgumentException  if {@code srcWidth} or
+     *          {@code srcHeight} is negative
+     * @throws  OutOfMemoryError  if the target row size exceeds
+     *          implementation limits
+     * @see     Xbrz#scaleImage(Xbrz.Workspace, int[], int[], int, int)
+     */
+    public StreamingXbrz(Xbrz xbrz, Xbrz.Workspace workspace,
+                         int srcWidth, int srcHeight, RowSink sink) {
+        if (srcWidth < 0 || srcHeight < 0)
+            throw new IllegalArgumentException("Negative source dimensions: "
+                    + srcWidth + "x" + srcHeight);
+
+        this.xbrz = xbrz;
+        this.state = Objects.requireNonNull(workspace, "workspace");
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.sink = sink;
+        this.srcRows = new int[Math.multiplyExact(srcWidth, RING_ROWS)];
+        this.trgRows = new int[Xbrz.targetArraySize(srcWidth, 1, xbrz.factor())];
+    }
+
+    /**
+     * Returns the number of source rows pushed so far.
+     *
+     * @return  the number of source rows pushed
+     */
+    public int rowsPushed() {
+        return rowsPushed;
+    }
+
+    /**
+     * Returns whether all source rows have been pushed, and all target
+     * rows passed on to the sink.
+     *
+     * @return  whether the complete image has been scaled
+     */
+    public boolean isComplete() {
+        return rowsScaled == srcHeight;
+    }
+
+    /**
+     * Pushes the next source row.  Any target rows which have become
+     * complete are passed to the sink before this method returns.
+     *
+     * @param   row  buffer containing the source row pixels
+     * @param   offset  the index of the first pixel of the row in
+     *          {@code row}
+     * @throws  IllegalStateException  if all source rows have been
+     *          already pushed
+     */
+    public void push(int[] row, int offset) {
+        System.arraycopy(row, offset, srcRows, nextRow(), srcWidth);
+        rowPushed();
+    }
+
+    /**
+     * Pushes the next source row, reading {@code srcWidth} pixels from the
+     * current position of the given buffer.
+     *
+     * @param   row  buffer containing the source row pixels
+     * @throws  java.nio.BufferUnderflowException  if there are fewer than
+     *          {@code srcWidth} pixels remaining in the buffer
+     * @throws  IllegalStateException  if all source rows have been
+     *          already pushed
+     * @see     #push(int[], int)
+     */
+    public void push(IntBuffer row) {
+        row.get(srcRows, nextRow(), srcWidth);
+        rowPushed();
+    }
+
+    //offset of the next row in srcRows
+    final int nextRow() {
+        if (rowsPushed == srcHeight)
+            throw new IllegalStateException("All " + srcHeight + " source rows already pushed");
+
+        return (rowsPushed % RING_ROWS) * srcWidth;
+    }
+
+    final int[] srcRows() {
+        return srcRows;
+    }
+
+    final void rowPushed() {
+        rowsPushed += 1;
+
+        if (srcWidth == 0) {
+            // nothing to scale, the kernel reads at least one pixel
+            rowsScaled = rowsPushed;
+            sink.accept(trgRows, (rowsScaled - 1) * xbrz.factor());
+            return;
+        }
+
+        if (!started) {
+            // (-1) row context: rows -2, -1 (outside), 0, 1
+            if (rowsPushed < Math.min(2, srcHeight))
+                return;
+
+            xbrz.begin(state, srcRows, 0, srcWidth, RING_ROWS, srcWidth, srcHeight,
+                       0, srcWidth, 0, trgRows, 0, srcWidth * xbrz.factor());
+            started = true;
+        }
+
+        // row y requires rows up to y + 2
+        final int rowsAvailable = (rowsPushed == srcHeight) ? srcHeight : rowsPushed - 2;
+        while (rowsScaled < rowsAvailable) {
+            final int y = rowsScaled;
+            state.out.origin(0, y);
+            xbrz.scaleRow(state, y);
+            rowsScaled += 1;
+            if (rowsScaled == srcHeight) {
+                state.release();
+            }
+            sink.accept(trgRows, y * xbrz.factor());
+        }
+    }
+
+}
@@ -2,9 +2,17 @@ package io.github.stanio.xbrz;
 
 import static io.github.stanio.xbrz.BlendInfo.*;
 import static io.github.stanio.xbrz.BlendType.*;
+import static io.github.stanio.xbrz.Kernel_3x3.*;
 import static io.github.stanio.xbrz.RotationDegree.*;
 import static java.lang.Math.multiplyExact;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.Supplier;
 
 /**
@@ -94,15 +102,103 @@ public class Xbrz {
     } // class ScalerCfg
 
 
+    /**
+     * Holds the working state of a scaling operation: the kernels, the
+     * corner preprocessing buffer and the output matrix.
+     * <p>
+     * Methods not taking a workspace use one per thread.  Callers may
+     * instead allocate workspaces, pool them and pass them in, f.e. when
+     * running on virtual threads, which don't benefit from thread-local
+     * reuse.  The workspace doesn't keep references to the source and
+     * target buffers after the scaling operation ends.</p>
+     * <p>
+     * A workspace may be used with any {@code Xbrz} instance, but only by a
+     * single scaling operation at a time.</p>
+     */
+    public static final class Workspace {
+
+        private static final ThreadLocal<Workspace> local = ThreadLocal.withInitial(Workspace::new);
+
+        final Kernel_4x4 ker4 = new Kernel_4x4();
+        final DistanceCache dc = new DistanceCache();
+        final OutputMatrix out = new OutputMatrix();
+        final BlendResult res = new BlendResult();
+
+        byte[] preProcBuf = new byte[0];
+        int width;
+
+        //blend shapes recorded instead of scaling, see blendMap()
+        short[] shapes;
+        //outputs of several factors written instead of out, see scaleAll()
+        OutputMatrix[] outs;
+        //palette index distances used instead of the scaler's batch,
+        //see scaleImage(byte[], int[], int[], int, int)
+        ColorDistanceBatch distBatch;
+
+        public Workspace() {
+            // empty
+        }
+
+        static Workspace local() {
+            return local.get();
+        }
+
+        final byte[] preProcBuf(int width) {
+            if (preProcBuf.length < width) {
+                preProcBuf = new byte[width];
+            }
+            this.width = width;
+            return preProcBuf;
+        }
+
+        //don't pin the image buffers in pooled workspaces
+        final void release() {
+            ker4.release();
+            dc.release();
+            out.release();
+        }
+
+    } // class Workspace
+
+
     /** The JVM may reserve some header words in an array. */
     private static final int SOFT_MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
 
     private static final boolean DEBUG = false;
 
-    private final Scaler scaler;
+    /** Number of palettes to keep the pairwise color distances of. */
+    private static final int PALETTE_CACHE_SIZE = 4;
+
+    /**
+     * The number of source pixels around a tile, on each side, which
+     * affect the scaling result.
+     *
+     * @see  #scaleTile(int[], int, int, int, int, int, int, int, int, int[])
+     */
+    public static final int TILE_HALO = 2;
+
+    /** Minimum number of source pixels for a parallel stripe. */
+    private static final int MIN_STRIPE_PIXELS = 1 << 14;
+
+    final Scaler scaler;
     private final ScalerCfg cfg;
-    private final ColorDistance dist;
-    private final boolean withAlpha;
+    final ColorDistance dist;
+    final ColorDistanceBatch distBatch;
+    final boolean withAlpha;
+
+    //blending decisions only compare distances, possibly squared ones
+    final ColorDistance blendDist;
+    final double equalColorTolerance;
+    final double steepDirectionThreshold;
+
+    //corner preprocessing distances and thresholds, possibly squared ones
+    final double centerDirectionBias;
+    final double dominantDirectionThreshold;
+
+    private final ScalePipeline pipeline;
+
+    //derived scalers of the recently used palettes, most recent first
+    private final Palette[] palettes = new Palette[PALETTE_CACHE_SIZE];
 
     /**
      * Constructs a new xBRZ scaler.
@@ -124,12 +220,137 @@ public class Xbrz {
     }
 
     public Xbrz(int factor, boolean withAlpha, ScalerCfg cfg, ColorDistance colorDistance) {
-        this.scaler = Scaler.forFactor(factor, withAlpha);
+        this(factor, withAlpha, cfg, colorDistance, false, false);
+    }
+
+    //the squared distance and premultiplied alpha variants, see the factory methods
+    private Xbrz(int factor, boolean withAlpha, ScalerCfg cfg,
+                 ColorDistance colorDistance, boolean squaredDistance,
+                 boolean premultipliedAlpha) {
+        if (withAlpha && premultipliedAlpha) {
+            this.scaler = Scaler.forFactor(factor, ColorGradient.gradientARGBPremultiplied());
+            this.dist = ColorDistance.withPremultipliedAlpha(colorDistance);
+        } else {
+            this.scaler = Scaler.forFactor(factor, withAlpha);
+            this.dist = withAlpha ? ColorDistance.withAlpha(colorDistance) : colorDistance;
+        }
+        this.cfg = cfg;
+        this.distBatch = ColorDistanceBatch.of(dist);
+        this.withAlpha = withAlpha;
+
+        if (squaredDistance) {
+            this.blendDist = new SquaredColorDistance(dist);
+            this.equalColorTolerance = square(cfg.equalColorTolerance);
+            this.steepDirectionThreshold = square(cfg.steepDirectionThreshold);
+        } else {
+            this.blendDist = dist;
+            this.equalColorTolerance = cfg.equalColorTolerance;
+            this.steepDirectionThreshold = cfg.steepDirectionThreshold;
+        }
+        this.centerDirectionBias = cfg.centerDirectionBias;
+        this.dominantDirectionThreshold = cfg.dominantDirectionThreshold;
+        this.pipeline = ScalePipeline.of(this);
+    }
+
+    //all decisions on squared fixed-point distances
+    private Xbrz(Scaler scaler, boolean withAlpha, ScalerCfg cfg, ColorDistance fixedDistance) {
+        this.scaler = scaler;
         this.cfg = cfg;
-        this.dist = withAlpha ? ColorDistance.withAlpha(colorDistance) : colorDistance;
+        this.dist = new SquaredColorDistance(withAlpha ? ColorDistance.withAlpha(fixedDistance)
+                                                       : fixedDistance);
+        this.distBatch = null;
         this.withAlpha = withAlpha;
+        this.blendDist = dist;
+        this.equalColorTolerance = square(cfg.equalColorTolerance);
+        this.steepDirectionThreshold = square(cfg.steepDirectionThreshold);
+        this.centerDirectionBias = square(cfg.centerDirectionBias);
+        this.dominantDirectionThreshold = square(cfg.dominantDirectionThreshold);
+        this.pipeline = ScalePipeline.of(this);
     }
 
+    /**
+     * Creates an xBRZ scaler whose pixel blending decisions compare
+     * {@linkplain ColorDistance#calcSquared squared color distances} against
+     * squared thresholds, avoiding the square root computation of most color
+     * distance functions.  These decisions are equivalent barring floating-point
+     * rounding at the exact threshold boundaries.  The corner preprocessing
+     * sums up distances and continues using the plain ones.
+     *
+     * @param   factor  the scale factor to apply
+     * @param   withAlpha  whether to handle the alpha channel
+     * @param   cfg  the scaler configuration
+     * @param   colorDistance  the color distance function
+     * @return  A new squared distance decision scaler
+     * @throws  IllegalArgumentException
+     *          if the specified scale factor is &lt; 2 or &gt; 6
+     * @see     ColorDistance#calcSquared(int, int)
+     */
+    public static Xbrz squaredDistance(int factor, boolean withAlpha,
+                                       ScalerCfg cfg, ColorDistance colorDistance) {
+        return new Xbrz(factor, withAlpha, cfg, colorDistance, true, false);
+    }
+
+    /**
+     * Creates an xBRZ scaler of pixels with their color channels premultiplied
+     * by alpha (like {@code TYPE_INT_ARGB_PRE} images).  The target pixels are
+     * produced premultiplied, as well.  The color gradients become plain
+     * weighted averages of the channels, and the color distances are
+     * calculated on the premultiplied values.  The result is visually
+     * equivalent to scaling the non-premultiplied pixels.
+     *
+     * @param   factor  the scale factor to apply
+     * @param   cfg  the scaler configuration
+     * @param   colorDistance  the color distance function
+     * @return  A new premultiplied alpha scaler
+     * @throws  IllegalArgumentException
+     *          if the specified scale factor is &lt; 2 or &gt; 6
+     */
+    public static Xbrz premultipliedAlpha(int factor, ScalerCfg cfg, ColorDistance colorDistance) {
+        return new Xbrz(factor, true, cfg, colorDistance, false, true);
+    }
+
+    /**
+     * Creates an xBRZ scaler making all blending decisions on squared
+     * {@linkplain ColorDistance#fixedYCbCr fixed-point YCbCr} color
+     * distances, with the configuration thresholds squared up front.
+     * <p>
+     * The corner preprocessing sums up squared distances, as well, which
+     * weights strong color differences more than the plain distances do.
+     * Compared to the default scaler, over 99% of the scaled pixels of the
+     * test images come out the same (99.2-99.5% for a full-color picture,
+     * 99.8% or more for icons and shapes), with the differences limited to
+     * edge shapes.  Opaque pixels involve no floating-point distance
+     * computations.</p>
+     *
+     * @param   factor  the scale factor to apply
+     * @param   withAlpha  whether to handle the alpha channel
+     * @param   cfg  the scaler configuration
+     * @return  A new fixed-point decision scaler
+     * @throws  IllegalArgumentException
+     *          if the specified scale factor is &lt; 2 or &gt; 6
+     */
+    public static Xbrz fixedPoint(int factor, boolean withAlpha, ScalerCfg cfg) {
+        return new Xbrz(Scaler.forFactor(factor, withAlpha), withAlpha,
+                        cfg, ColorDistance.fixedYCbCr(cfg.luminanceWeight));
+    }
+
+    private Xbrz(Xbrz base, ColorDistance dist, ColorDistance blendDist,
+                 ColorDistanceBatch distBatch) {
+        this.scaler = base.scaler;
+        this.cfg = base.cfg;
+        this.dist = dist;
+        this.distBatch = distBatch;
+        this.withAlpha = base.withAlpha;
+        this.blendDist = blendDist;
+        this.equalColorTolerance = base.equalColorTolerance;
+        this.steepDirectionThreshold = base.steepDirectionThreshold;
+        this.centerDirectionBias = base.centerDirectionBias;
+        this.dominantDirectionThreshold = base.dominantDirectionThreshold;
+        this.pipeline = ScalePipeline.of(this);
+    }
+
+    private static double square(double value) { return value * value; }
+
     /**
      * The factor this {@code Xbrz} instance applies when scaling images.
      *
@@ -148,218 +369,564 @@ public class Xbrz {
         return factor();
     }
 
-    private final double dist(int pix1, int pix2) { return dist.calc(pix1, pix2); }
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer.
+     * <p>
+     * The pixels are expected to be packed as <abbr>ARGB</abbr> {@code int}
+     * (32-bit) values.</p>
+     */
+    public int[] scaleImage(int[] src, int[] trg, int srcWidth, int srcHeight) {
+        return scaleImage(Workspace.local(), src, trg, srcWidth, srcHeight);
+    }
 
-    private final boolean eq(int pix1, int pix2) { return dist(pix1, pix2) < cfg.equalColorTolerance; }
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer using the
+     * given workspace.
+     *
+     * @param   workspace  the workspace to use
+     * @param   src  source pixels
+     * @param   trg  target buffer, or {@code null} to allocate a new one
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @return  The target buffer
+     * @see     #scaleImage(int[], int[], int, int)
+     */
+    public int[] scaleImage(Workspace workspace, int[] src, int[] trg, int srcWidth, int srcHeight) {
+        if (trg == null) {
+            trg = new int[targetArraySize(srcWidth, srcHeight, factor())];
+        }
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return trg;
 
-    /* detect blend direction
+        scale(workspace, src, 0, srcWidth, srcWidth, srcHeight,
+              0, srcWidth, 0, srcHeight,
+              trg, 0, srcWidth * scaler.scale());
+        return trg;
+    }
 
-    preprocessing blend result:
-    ---------
-    | F | G |   evaluate corner between F, G, J, K
-    |---+---|   current input pixel is at position F
-    | J | K |
-    ---------   F, G, J, K corners of "BlendType" */
-    private void preProcessCorners(Kernel_4x4 ker, BlendResult result) {
-        result.reset();
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer, where either
+     * of the buffers may hold the image rows at an offset, and with a
+     * distance between rows different from the image width.
+     * <p>
+     * This allows reading from and writing to a region of a larger image
+     * buffer, f.e. a {@code BufferedImage} sub-image data buffer or a
+     * texture atlas, without copying the pixels.</p>
+     *
+     * @param   src  source pixels
+     * @param   srcOffset  the index of the first source pixel in {@code src}
+     * @param   srcScanline  the distance between source rows in {@code src}
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   trg  target buffer
+     * @param   trgOffset  the index of the first target pixel in {@code trg}
+     * @param   trgScanline  the distance between target rows in {@code trg}
+     */
+    public void scaleImage(int[] src, int srcOffset, int srcScanline,
+                           int srcWidth, int srcHeight,
+                           int[] trg, int trgOffset, int trgScanline) {
+        scaleImage(Workspace.local(), src, srcOffset, srcScanline,
+                   srcWidth, srcHeight, trg, trgOffset, trgScanline);
+    }
 
-        if ((ker.f == ker.g &&
-             ker.j == ker.k) ||
-            (ker.f == ker.j &&
-             ker.g == ker.k))
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer using the
+     * given workspace.
+     *
+     * @param   workspace  the workspace to use
+     * @param   src  source pixels
+     * @param   srcOffset  the index of the first source pixel in {@code src}
+     * @param   srcScanline  the distance between source rows in {@code src}
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   trg  target buffer
+     * @param   trgOffset  the index of the first target pixel in {@code trg}
+     * @param   trgScanline  the distance between target rows in {@code trg}
+     * @see     #scaleImage(int[], int, int, int, int, int[], int, int)
+     */
+    public void scaleImage(Workspace workspace, int[] src, int srcOffset, int srcScanline,
+                           int srcWidth, int srcHeight,
+                           int[] trg, int trgOffset, int trgScanline) {
+        if (srcWidth <= 0 || srcHeight <= 0)
             return;
 
-        final double jg = dist(ker.i, ker.f) + dist(ker.f, ker.c) + dist(ker.n, ker.k) + dist(ker.k, ker.h) + cfg.centerDirectionBias * dist(ker.j, ker.g);
-        final double fk = dist(ker.e, ker.j) + dist(ker.j, ker.o) + dist(ker.b, ker.g) + dist(ker.g, ker.l) + cfg.centerDirectionBias * dist(ker.f, ker.k);
+        scale(workspace, src, srcOffset, srcScanline, srcWidth, srcHeight,
+              0, srcWidth, 0, srcHeight,
+              trg, trgOffset, trgScanline);
+    }
 
-        if (jg < fk)
-        {
-            final boolean dominantGradient = cfg.dominantDirectionThreshold * jg < fk;
-            if (ker.f != ker.g && ker.f != ker.j)
-                result.blend_f = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer.
+     * <p>
+     * The {@code srcWidth * srcHeight} source pixels are read starting at
+     * the current position of the {@code src} buffer, and the scaled pixels
+     * are written starting at the current position of the {@code trg}
+     * buffer.  The positions of the buffers are not changed.</p>
+     * <p>
+     * Array-backed buffers are accessed directly.  Otherwise, f.e. with
+     * direct or memory-mapped buffers, only a few rows of source and target
+     * pixels are copied through intermediate arrays at a time.</p>
+     *
+     * @param   src  source pixels
+     * @param   trg  target buffer
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @throws  BufferUnderflowException  if the source buffer has fewer
+     *          pixels remaining than the source dimensions require
+     * @throws  BufferOverflowException  if the target buffer has less space
+     *          remaining than the scaled image requires
+     * @throws  java.nio.ReadOnlyBufferException  if the target buffer is
+     *          read-only
+     * @see     #scaleImage(int[], int, int, int, int, int[], int, int)
+     */
+    public void scaleImage(IntBuffer src, IntBuffer trg, int srcWidth, int srcHeight) {
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return;
+
+        final int trgSize = targetArraySize(srcWidth, srcHeight, factor());
+        if (src.remaining() < (long) srcWidth * srcHeight)
+            throw new BufferUnderflowException();
+        if (trg.remaining() < trgSize)
+            throw new BufferOverflowException();
 
-            if (ker.k != ker.j && ker.k != ker.g)
-                result.blend_k = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+        if (src.hasArray() && trg.hasArray()) {
+            scaleImage(src.array(), src.arrayOffset() + src.position(), srcWidth, srcWidth, srcHeight,
+                       trg.array(), trg.arrayOffset() + trg.position(), srcWidth * factor());
+            return;
         }
-        else if (fk < jg)
-        {
-            final boolean dominantGradient = cfg.dominantDirectionThreshold * fk < jg;
-            if (ker.j != ker.f && ker.j != ker.k)
-                result.blend_j = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
 
-            if (ker.g != ker.f && ker.g != ker.k)
-                result.blend_g = dominantGradient ? BLEND_DOMINANT : BLEND_NORMAL;
+        IntBuffer source = src.duplicate();
+        IntBuffer target = trg.duplicate();
+        Workspace state = Workspace.local();
+        try {
+            StreamingXbrz stream = new StreamingXbrz(this, state, srcWidth, srcHeight,
+                                                     (pixels, y) -> target.put(pixels));
+            for (int y = 0; y < srcHeight; y++) {
+                stream.push(source);
+            }
+        } finally {
+            state.release();
         }
     }
 
-    private void blendPixel(RotationDegree rotDeg,
-                            Kernel_3x3 ker,
-                            OutputMatrix out,
-                            byte blendInfo) //result of preprocessing all four corners of pixel "e"
-    {
-        byte blend = BlendInfo.rotate(blendInfo, rotDeg);
-
-        if (BlendInfo.getBottomR(blend) >= BLEND_NORMAL)
-        {
-            ker.rotDeg(rotDeg);
-            out.rotDeg(rotDeg);
-
-            final int e = ker.e();
-            final int f = ker.f();
-            final int h = ker.h();
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer.  The pixels
+     * are <abbr>ARGB</abbr> {@code int} values in the byte order of the
+     * respective buffer.
+     *
+     * @param   src  source pixels
+     * @param   trg  target buffer
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @see     #scaleImage(IntBuffer, IntBuffer, int, int)
+     * @see     ByteBuffer#asIntBuffer()
+     */
+    public void scaleImage(ByteBuffer src, ByteBuffer trg, int srcWidth, int srcHeight) {
+        scaleImage(src.asIntBuffer(), trg.asIntBuffer(), srcWidth, srcHeight);
+    }
 
-            final int g = ker.g();
-            final int c = ker.c();
-            final int i = ker.i();
+    /**
+     * Scales byte-interleaved {@code src} pixels to the {@code trg} buffer,
+     * in the same pixel format.
+     * <p>
+     * Every pixel is still converted to an <abbr>ARGB</abbr> {@code int}
+     * value, which the scaler works on, and the scaled pixels back to the
+     * given format.  The conversion goes row by row, as the scaling
+     * progresses, so no intermediate buffers for the whole source and
+     * target images are allocated.</p>
+     *
+     * @param   format  the source and target pixel format
+     * @param   src  source pixel bytes
+     * @param   srcOffset  the index of the first source pixel byte in {@code src}
+     * @param   srcScanline  the distance between source rows in {@code src}, in bytes
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   trg  target buffer
+     * @param   trgOffset  the index of the first target pixel byte in {@code trg}
+     * @param   trgScanline  the distance between target rows in {@code trg}, in bytes
+     * @see     #scaleImage(int[], int, int, int, int, int[], int, int)
+     */
+    public void scaleImage(PixelFormat format, byte[] src, int srcOffset, int srcScanline,
+                           int srcWidth, int srcHeight,
+                           byte[] trg, int trgOffset, int trgScanline) {
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return;
 
-            boolean doLineBlend;
+        final int factor = factor();
+        final int trgWidth = srcWidth * factor;
+        Workspace state = Workspace.local();
+        try {
+            StreamingXbrz stream = new StreamingXbrz(this, state, srcWidth, srcHeight, (pixels, y) -> {
+                for (int i = 0; i < factor; i++) {
+                    format.fromARGB(pixels, i * trgWidth, trg, trgOffset + (y + i) * trgScanline, trgWidth);
+                }
+            });
+            for (int y = 0; y < srcHeight; y++) {
+                format.toARGB(src, srcOffset + y * srcScanline, stream.srcRows(), stream.nextRow(), srcWidth);
+                stream.rowPushed();
+            }
+        } finally {
+            state.release();
+        }
+    }
 
-            if (BlendInfo.getBottomR(blend) >= BLEND_DOMINANT)
-                doLineBlend = true;
+    /**
+     * Scales palette-indexed {@code src} pixels to the {@code trg} buffer.
+     * <p>
+     * The color distances between all palette entries are computed once,
+     * and reused for subsequent calls with any of the few most recently
+     * used palettes, so every color distance during the scaling is just
+     * a table lookup.  The indices are converted to colors row by row, as
+     * the scaling progresses.  The result is the same as scaling the
+     * corresponding <abbr>ARGB</abbr> pixels.</p>
+     *
+     * @param   src  the source pixels as (unsigned) palette indices
+     * @param   palette  the <abbr>ARGB</abbr> colors of the palette
+     * @param   trg  the target buffer, or {@code null} to allocate a new one
+     * @param   srcWidth  the source image width
+     * @param   srcHeight  the source image height
+     * @return  the target buffer
+     * @throws  IllegalArgumentException  if the palette contains more than
+     *          256 colors
+     * @throws  ArrayIndexOutOfBoundsException  if some of the source indices
+     *          refer to a color outside the palette
+     */
+    public int[] scaleImage(byte[] src, int[] palette, int[] trg, int srcWidth, int srcHeight) {
+        if (palette.length > 256)
+            throw new IllegalArgumentException("Palette size exceeds 256: " + palette.length);
 
-            //make sure there is no second blending in an adjacent rotation for this pixel: handles insular pixels, mario eyes
-            else if (BlendInfo.getTopR(blend) != BLEND_NONE && !eq(e, g)) //but support double-blending for 90° corners
-                doLineBlend = false;
-            else if (BlendInfo.getBottomL(blend) != BLEND_NONE && !eq(e, c))
-                doLineBlend = false;
+        if (trg == null) {
+            trg = new int[targetArraySize(srcWidth, srcHeight, factor())];
+        }
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return trg;
+
+        //only a ring of source rows gets converted, along with their indices
+        //at the same positions for the distance batch
+        final Palette distances = palette(palette);
+        final Xbrz scaler = distances.scaler;
+        final int[] rows = new int[multiplyExact(srcWidth, StreamingXbrz.RING_ROWS)];
+        final byte[] indexRows = new byte[rows.length];
+        Workspace state = Workspace.local();
+        state.distBatch = distances.dist.batch(indexRows);
+        try {
+            int rowsRead = 0;
+            for (; rowsRead < Math.min(2, srcHeight); rowsRead++) {
+                readPaletteRow(src, palette, srcWidth, rowsRead, rows, indexRows);
+            }
+            scaler.begin(state, rows, 0, srcWidth, StreamingXbrz.RING_ROWS, srcWidth, srcHeight,
+                         0, srcWidth, 0, trg, 0, srcWidth * factor());
 
-            //no full blending for L-shapes; blend corner only (handles "mario mushroom eyes")
-            else if (!eq(e, i) && eq(g, h) && eq(h, i) && eq(i, f) && eq(f, c))
-                doLineBlend = false;
+            for (int y = 0; y < srcHeight; ++y) {
+                // row y requires rows up to y + 2
+                for (; rowsRead < Math.min(y + 3, srcHeight); rowsRead++) {
+                    readPaletteRow(src, palette, srcWidth, rowsRead, rows, indexRows);
+                }
+                scaler.scaleRow(state, y);
+            }
+        } finally {
+            state.distBatch = null;
+            state.release();
+        }
+        return trg;
+    }
 
-            else
-                doLineBlend = true;
+    private static void readPaletteRow(byte[] src, int[] palette, int srcWidth, int y,
+                                       int[] rows, byte[] indexRows) {
+        final int rowPos = (y % StreamingXbrz.RING_ROWS) * srcWidth;
+        System.arraycopy(src, y * srcWidth, indexRows, rowPos, srcWidth);
+        for (int x = rowPos, rowEnd = rowPos + srcWidth; x < rowEnd; x++) {
+            rows[x] = palette[indexRows[x] & 0xFF];
+        }
+    }
 
-            final int px = dist(e, f) <= dist(e, h) ? f : h; //choose most similar color
+    //the scaler using the pairwise distances of the given colors
+    private Palette palette(int[] colors) {
+        synchronized (palettes) {
+            for (int i = 0; i < palettes.length && palettes[i] != null; i++) {
+                Palette cached = palettes[i];
+                if (Arrays.equals(cached.colors, colors)) {
+                    System.arraycopy(palettes, 0, palettes, 1, i);
+                    palettes[0] = cached;
+                    return cached;
+                }
+            }
+        }
 
-            if (doLineBlend)
-            {
-                final double fg = dist(f, g);
-                final double hc = dist(h, c);
+        //compute the distances outside the lock, a race just wastes some work
+        Palette palette = new Palette(colors, dist, blendDist);
+        palette.scaler = new Xbrz(this, palette.dist, palette.blendDist, null);
+        synchronized (palettes) {
+            System.arraycopy(palettes, 0, palettes, 1, palettes.length - 1);
+            palettes[0] = palette;
+        }
+        return palette;
+    }
 
-                final boolean haveShallowLine = cfg.steepDirectionThreshold * fg <= hc && e != g && ker.d() != g;
-                final boolean haveSteepLine   = cfg.steepDirectionThreshold * hc <= fg && e != c && ker.b() != c;
+    /**
+     * Computes the blending decisions for the given source image, which
+     * {@code Xbrz} instances of any factor may render.
+     *
+     * @param   src  source pixels
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @return  The blend map of the source image
+     * @throws  IllegalArgumentException  if {@code srcWidth} or
+     *          {@code srcHeight} is negative
+     * @see     #scaleImage(BlendMap, int[])
+     */
+    public BlendMap blendMap(int[] src, int srcWidth, int srcHeight) {
+        BlendMap map = new BlendMap(src, srcWidth, srcHeight, withAlpha);
+        if (srcWidth == 0 || srcHeight == 0)
+            return map;
 
-                if (haveShallowLine)
-                {
-                    if (haveSteepLine)
-                        scaler.blendLineSteepAndShallow(px, out);
-                    else
-                        scaler.blendLineShallow(px, out);
-                }
-                else
-                {
-                    if (haveSteepLine)
-                        scaler.blendLineSteep(px, out);
-                    else
-                        scaler.blendLineDiagonal(px, out);
-                }
-            }
-            else
-                scaler.blendCorner(px, out);
+        Workspace state = Workspace.local();
+        state.shapes = map.shapes;
+        try {
+            begin(state, map.pixels, 0, srcWidth, 0, srcWidth, srcHeight,
+                  0, srcWidth, 0, null, 0, 0);
+
+            for (int y = 0; y < srcHeight; ++y)
+                scaleRow(state, y);
+        } finally {
+            state.shapes = null;
+            state.release();
         }
+        return map;
     }
 
     /**
-     * Scales the {@code src} pixels to the {@code trg} buffer.
-     * <p>
-     * The pixels are expected to be packed as <abbr>ARGB</abbr> {@code int}
-     * (32-bit) values.</p>
+     * Scales the source image of the given blend map, using its precomputed
+     * blending decisions.  The result is the same as scaling the source
+     * image with this instance, when the map has been computed by an
+     * {@code Xbrz} instance of the same configuration, regardless of its
+     * factor.
+     *
+     * @param   map  the blend map to render
+     * @param   trg  target buffer, or {@code null} to allocate a new one
+     * @return  The target buffer
+     * @throws  IllegalArgumentException  if the map has been computed with
+     *          a different alpha channel handling
+     * @see     #blendMap(int[], int, int)
      */
-    public int[] scaleImage(int[] src, int[] trg, int srcWidth, int srcHeight) {
+    public int[] scaleImage(BlendMap map, int[] trg) {
+        if (map.withAlpha != withAlpha)
+            throw new IllegalArgumentException("Blend map computed "
+                    + (map.withAlpha ? "with" : "without") + " alpha channel handling");
+
         if (trg == null) {
-            trg = new int[targetArraySize(srcWidth, srcHeight, factor())];
+            trg = new int[targetArraySize(map.width, map.height, factor())];
+        }
+        if (map.width == 0 || map.height == 0)
+            return trg;
+
+        Workspace state = Workspace.local();
+        try {
+            pipeline.render(state, map, trg, 0, map.width * scaler.scale());
+        } finally {
+            state.release();
         }
-        scaleImage(src, trg, srcWidth, srcHeight, 0, srcHeight);
         return trg;
     }
 
+    /**
+     * Scales the {@code src} pixels by each of the given factors, in a single
+     * pass over the source.  The kernel of every source pixel is evaluated
+     * once, and its blended output block is written to the targets of all
+     * factors in the same step.  The results are the same as scaling the
+     * source with {@code Xbrz} instances of the same configuration and the
+     * respective factors.
+     *
+     * @param   src  source pixels
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   factors  the scaling factors, in the [2, 6] range
+     * @return  The target buffers, in the order of {@code factors}
+     * @throws  IllegalArgumentException  if a factor is outside the [2, 6]
+     *          range, or {@code srcWidth} or {@code srcHeight} is negative
+     * @see     #blendMap(int[], int, int)
+     */
+    public int[][] scaleAll(int[] src, int srcWidth, int srcHeight, int... factors) {
+        if (srcWidth < 0 || srcHeight < 0)
+            throw new IllegalArgumentException("Negative source dimensions: "
+                    + srcWidth + "x" + srcHeight);
+
+        int[][] trgs = new int[factors.length][];
+        OutputMatrix[] outs = new OutputMatrix[factors.length];
+        for (int i = 0; i < factors.length; i++) {
+            Scaler factorScaler = Scaler.forFactor(factors[i], scaler.colorGradient());
+            trgs[i] = new int[targetArraySize(srcWidth, srcHeight, factors[i])];
+            outs[i] = new OutputMatrix();
+            outs[i].init(factorScaler, trgs[i], srcWidth * factors[i]);
+        }
+        if (srcWidth == 0 || srcHeight == 0 || factors.length == 0)
+            return trgs;
+
+        Workspace state = Workspace.local();
+        state.outs = outs;
+        try {
+            begin(state, src, 0, srcWidth, 0, srcWidth, srcHeight,
+                  0, srcWidth, 0, null, 0, 0);
+
+            for (int y = 0; y < srcHeight; ++y)
+                scaleRow(state, y);
+        } finally {
+            state.outs = null;
+            state.release();
+        }
+        return trgs;
+    }
+
     public void scaleImage(int[] src, int[] trg, int srcWidth, int srcHeight, int yFirst, int yLast) {
         yFirst = Math.max(yFirst, 0);
         yLast  = Math.min(yLast, srcHeight);
         if (yFirst >= yLast || srcWidth <= 0)
             return;
 
-        byte[] preProcBuf = new byte[srcWidth];
-        Kernel_4x4 ker4 = Kernel_4x4.instance(src, srcWidth, srcHeight, withAlpha);
-        OutputMatrix out = OutputMatrix.instance(scaler.scale(), trg, srcWidth * scaler.scale());
-
-        final BlendResult res = BlendResult.instance();
-
-        //initialize preprocessing buffer for first row of current stripe: detect upper left and right corner blending
-        {
-            ker4.positionY(yFirst - 1);
-
-            {
-                preProcessCorners(ker4, res);
-                clearAddTopL(preProcBuf, 0, res.blend_k); //set 1st known corner for (0, yFirst)
-            }
-
-            for (int x = 0; x < srcWidth; ++x)
-            {
-                ker4.shift();     //shift previous kernel to the left
-                ker4.readDhlp(x); // (x, yFirst - 1) is at position F
+        final int trgWidth = srcWidth * scaler.scale();
+        scale(src, yFirst * srcWidth, srcWidth, srcWidth, srcHeight,
+              0, srcWidth, yFirst, yLast,
+              trg, yFirst * scaler.scale() * trgWidth, trgWidth);
+    }
 
-                preProcessCorners(ker4, res);
-                addTopR(preProcBuf, x, res.blend_j); //set 2nd known corner for (x, yFirst)
+    /**
+     * Scales a rectangular tile of a source image.
+     * <p>
+     * Only the tile area extended with a {@value #TILE_HALO}-pixel halo on
+     * each side (clipped to the image bounds) is read from the {@code src}
+     * buffer, so the complete source image doesn't have to be resident in
+     * memory.  The source pixel at {@code (tileX + i, tileY + j)} is read
+     * from {@code src[srcOffset + j * srcScanline + i]}, where {@code i} and
+     * {@code j} could be as low as {@code -TILE_HALO}.</p>
+     * <p>
+     * The {@code trg} buffer receives the scaled tile only: {@code tileWidth
+     * * factor} by {@code tileHeight * factor} pixels.  Stitching the scaled
+     * tiles of an image gives the same result as scaling the whole image.
+     * Tiles may be scaled concurrently.</p>
+     *
+     * @param   src  source pixels covering the tile and its halo
+     * @param   srcOffset  the index of the top-left tile pixel in {@code src}
+     * @param   srcScanline  the distance between source rows in {@code src}
+     * @param   srcWidth  the full source image width
+     * @param   srcHeight  the full source image height
+     * @param   tileX  the x-coordinate of the tile in the source image
+     * @param   tileY  the y-coordinate of the tile in the source image
+     * @param   tileWidth  the tile width
+     * @param   tileHeight  the tile height
+     * @param   trg  target buffer for the scaled tile, or {@code null} to
+     *          allocate a new one
+     * @return  The target buffer
+     * @throws  IllegalArgumentException  if the tile is not within the
+     *          source image bounds
+     */
+    public int[] scaleTile(int[] src, int srcOffset, int srcScanline,
+                           int srcWidth, int srcHeight,
+                           int tileX, int tileY, int tileWidth, int tileHeight,
+                           int[] trg) {
+        if (tileX < 0 || tileY < 0 || tileWidth < 0 || tileHeight < 0
+                || tileWidth > srcWidth - tileX || tileHeight > srcHeight - tileY)
+            throw new IllegalArgumentException("Tile [x=" + tileX + ",y=" + tileY
+                    + ",width=" + tileWidth + ",height=" + tileHeight
+                    + "] outside source bounds [width=" + srcWidth + ",height=" + srcHeight + "]");
 
-                if (x + 1 < srcWidth)
-                    clearAddTopL(preProcBuf, x + 1, res.blend_k); //set 1st known corner for (x + 1, yFirst)
-            }
+        if (trg == null) {
+            trg = new int[targetArraySize(tileWidth, tileHeight, factor())];
         }
-        //------------------------------------------------------------------------------------
-
-        Kernel_3x3 ker3 = ker4.kernel_3x3();
-
-        for (int y = yFirst; y < yLast; ++y)
-        {
-            out.positionY(y);
-            //initialize at position x = -1
-            ker4.positionY(y);
+        if (tileWidth == 0 || tileHeight == 0)
+            return trg;
 
-            byte blend_xy1; //corner blending for current (x, y + 1) position
-            {
-                preProcessCorners(ker4, res);
-                blend_xy1 = clearAddTopL(res.blend_k); //set 1st known corner for (0, y + 1) and buffer for use on next column
+        scale(src, srcOffset, srcScanline, srcWidth, srcHeight,
+              tileX, tileX + tileWidth, tileY, tileY + tileHeight,
+              trg, 0, tileWidth * scaler.scale());
+        return trg;
+    }
 
-                addBottomL(preProcBuf, 0, res.blend_g); //set 3rd known corner for (0, y)
-            }
+    /*
+    Scales the [xFirst, xLast) x [yFirst, yLast) source area.  The source pixel
+    at (xFirst, yFirst) is at src[srcOffset], and its scaled output block starts
+    at trg[trgOffset].  The source is read up to 2 pixels outside the area, but
+    only within the srcWidth x srcHeight image bounds. */
+    private void scale(int[] src, int srcOffset, int srcScanline, int srcWidth, int srcHeight,
+                       int xFirst, int xLast, int yFirst, int yLast,
+                       int[] trg, int trgOffset, int trgScanline) {
+        scale(Workspace.local(), src, srcOffset, srcScanline, srcWidth, srcHeight,
+              xFirst, xLast, yFirst, yLast, trg, trgOffset, trgScanline);
+    }
 
-            for (int x = 0; x < srcWidth; ++x, out.incrementX())
-            {
-                ker4.shift();     //shift previous kernel to the left
-                ker4.readDhlp(x); // (x, y) is at position F
+    private void scale(Workspace state, int[] src, int srcOffset, int srcScanline,
+                       int srcWidth, int srcHeight,
+                       int xFirst, int xLast, int yFirst, int yLast,
+                       int[] trg, int trgOffset, int trgScanline) {
+        try {
+            begin(state, src, srcOffset, srcScanline, 0, srcWidth, srcHeight,
+                  xFirst, xLast, yFirst, trg, trgOffset, trgScanline);
 
-                //evaluate the four corners on bottom-right of current pixel
-                byte blend_xy = preProcBuf[x]; //for current (x, y) position
-                {
-                    preProcessCorners(ker4, res);
-                    blend_xy = addBottomR(blend_xy, res.blend_f); //all four corners of (x, y) have been determined at this point due to processing sequence!
+            for (int y = yFirst; y < yLast; ++y)
+                scaleRow(state, y);
+        } finally {
+            state.release();
+        }
+    }
 
-                    blend_xy1 = addTopR(blend_xy1, res.blend_j); //set 2nd known corner for (x, y + 1)
-                    preProcBuf[x] = blend_xy1; //store on current buffer position for use on next row
+    /**
+     * @see  ScalePipeline#begin(Workspace, int[], int, int, int, int, int, int, int, int, int[], int, int)
+     */
+    final void begin(Workspace state, int[] src, int srcOffset, int srcScanline, int ringRows,
+                     int srcWidth, int srcHeight, int xFirst, int xLast, int yFirst,
+                     int[] trg, int trgOffset, int trgScanline) {
+        pipeline.begin(state, src, srcOffset, srcScanline, ringRows, srcWidth, srcHeight,
+                       xFirst, xLast, yFirst, trg, trgOffset, trgScanline);
+    }
 
-                    if (x + 1 < srcWidth)
-                    {
-                        //blend_xy1 -> blend_x1y1
-                        blend_xy1 = clearAddTopL(res.blend_k); //set 1st known corner for (x + 1, y + 1) and buffer for use on next column
+    final void scaleRow(Workspace state, int y) {
+        pipeline.scaleRow(state, y);
+    }
 
-                        addBottomL(preProcBuf, x + 1, res.blend_g); //set 3rd known corner for (x + 1, y)
-                    }
-                }
+    /**
+     * {@code scaleImageParallel(src, trg, srcWidth, srcHeight, ForkJoinPool.commonPool())}
+     *
+     * @see  #scaleImageParallel(int[], int[], int, int, ForkJoinPool)
+     */
+    public int[] scaleImageParallel(int[] src, int[] trg, int srcWidth, int srcHeight) {
+        return scaleImageParallel(src, trg, srcWidth, srcHeight, ForkJoinPool.commonPool());
+    }
 
-                out.fillBlock(ker4.f);
+    /**
+     * Scales the {@code src} pixels to the {@code trg} buffer using the given
+     * fork-join pool.
+     * <p>
+     * The source is split into horizontal stripes which are scaled
+     * independently as by {@link #scaleImage(int[], int[], int, int, int, int)}.
+     * The result is identical to the one of the serial
+     * {@link #scaleImage(int[], int[], int, int)}.</p>
+     *
+     * @param   src  source pixels
+     * @param   trg  target buffer, or {@code null} to allocate a new one
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @param   pool  the pool to execute the stripe tasks
+     * @return  The target buffer
+     */
+    public int[] scaleImageParallel(int[] src, int[] trg, int srcWidth, int srcHeight, ForkJoinPool pool) {
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return scaleImage(src, trg, srcWidth, srcHeight);
+
+        // Each stripe re-evaluates the row preceding it, so keep stripes
+        // reasonably large while still providing a few tasks per worker
+        // for work-stealing to balance out.
+        int minRows = Math.max((MIN_STRIPE_PIXELS + srcWidth - 1) / srcWidth,
+                               srcHeight / (pool.getParallelism() << 2));
+        return scaleImageParallel(src, trg, srcWidth, srcHeight, pool, minRows);
+    }
 
-                //blend all four corners of current pixel
-                if (BlendInfo.blendingNeeded(blend_xy))
-                {
-                    blendPixel(ROT_0,   ker3, out, blend_xy);
-                    blendPixel(ROT_90,  ker3, out, blend_xy);
-                    blendPixel(ROT_180, ker3, out, blend_xy);
-                    blendPixel(ROT_270, ker3, out, blend_xy);
-                }
-            }
+    int[] scaleImageParallel(int[] src, int[] trg, int srcWidth, int srcHeight,
+                             ForkJoinPool pool, int minRows) {
+        if (trg == null) {
+            trg = new int[targetArraySize(srcWidth, srcHeight, factor())];
         }
+        pool.invoke(new StripeTask(src, trg, srcWidth, srcHeight,
+                                   0, srcHeight, Math.max(minRows, 1)));
+        return trg;
     }
 
     /**
@@ -371,6 +938,75 @@ public class Xbrz {
         return new Xbrz(factor, hasAlpha).scaleImage(src, trg, srcWidth, srcHeight);
     }
 
+    private final class StripeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] src;
+        private final int[] trg;
+        private final int srcWidth;
+        private final int srcHeight;
+        private final int yFirst;
+        private final int yLast;
+        private final int minRows;
+
+        StripeTask(int[] src, int[] trg, int srcWidth, int srcHeight,
+                   int yFirst, int yLast, int minRows) {
+            this.src = src;
+            this.trg = trg;
+            this.srcWidth = srcWidth;
+            this.srcHeight = srcHeight;
+            this.yFirst = yFirst;
+            this.yLast = yLast;
+            this.minRows = minRows;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = yLast - yFirst;
+            if (rows < 2 * minRows) {
+                scaleImage(src, trg, srcWidth, srcHeight, yFirst, yLast);
+                return;
+            }
+            int yMiddle = yFirst + rows / 2;
+            invokeAll(new StripeTask(src, trg, srcWidth, srcHeight, yFirst, yMiddle, minRows),
+                      new StripeTask(src, trg, srcWidth, srcHeight, yMiddle, yLast, minRows));
+        }
+
+    } // class StripeTask
+
+    /**
+     * Tests whether all of the given pixels are fully opaque.
+     * <p>
+     * An image with an alpha channel but only opaque pixels could be scaled
+     * by an instance without alpha handling ({@code withAlpha = false}),
+     * which is faster.  The result pixels are opaque ARGB, as well, while
+     * the image border pixels may differ slightly, as the edges are not
+     * treated as transparent.</p>
+     *
+     * @param   src  source pixels
+     * @param   srcOffset  the index of the first source pixel in {@code src}
+     * @param   srcScanline  the distance between source rows in {@code src}
+     * @param   srcWidth  source width
+     * @param   srcHeight  source height
+     * @return  {@code true} if all pixels have alpha of 255
+     * @see     #Xbrz(int, boolean)
+     */
+    public static boolean isOpaque(int[] src, int srcOffset, int srcScanline,
+                                   int srcWidth, int srcHeight) {
+        for (int y = 0, rowStart = srcOffset; y < srcHeight; y++, rowStart += srcScanline) {
+            // A plain reduction loop, which the JIT may vectorize;
+            // the early exit is checked once per row.
+            int bits = -1;
+            for (int i = rowStart, rowEnd = rowStart + srcWidth; i < rowEnd; i++) {
+                bits &= src[i];
+            }
+            if ((bits >>> 24) != 0xFF)
+                return false;
+        }
+        return true;
+    }
+
     public static int targetArraySize(int sourceWidth, int sourceHeight, int factor) {
         Supplier<String> message = () -> "Target size exceeds implementation limits (sourceWidth: "
                 + sourceWidth + ", sourceHeight: " + sourceHeight + ", scaleFactor: " + factor + ")";
@@ -418,30 +1054,68 @@ final class Kernel_4x4 {
     private int srcHeight;
     private boolean withAlpha;
 
+    private int srcOffset;
+    private int srcScanline;
+    private int ringRows;
+    private int xFirst;
+    private int xLast;
+    private int yFirst;
+
+    private static final int NO_ROW = Integer.MIN_VALUE;
+
     private int s_m1;
     private int s_0;
     private int s_p1;
     private int s_p2;
 
+    //[interiorFirst, interiorEnd) positions of the current row, reading
+    //within the image bounds
+    private int interiorFirst;
+    private int interiorEnd;
+
     private final Kernel_3x3 ker3;
 
-    private Kernel_4x4() {
+    Kernel_4x4() {
         this.ker3 = new Kernel_3x3(this);
     }
 
-    private static final ThreadLocal<Kernel_4x4> instance = new ThreadLocal<>();
+    final void init(int[] src, int srcWidth, int srcHeight, boolean withAlpha) {
+        this.src = src;
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.withAlpha = withAlpha;
+        origin(0, srcWidth, 0, 0, srcWidth, 0);
+    }
 
-    static Kernel_4x4 instance(int[] src, int srcWidth, int srcHeight, boolean withAlpha) {
-        Kernel_4x4 kernel = instance.get();
-        if (kernel == null) {
-            kernel = new Kernel_4x4();
-            instance.set(kernel);
-        }
-        kernel.src = src;
-        kernel.srcWidth = srcWidth;
-        kernel.srcHeight = srcHeight;
-        kernel.withAlpha = withAlpha;
-        return kernel;
+    final void release() {
+        this.src = null;
+    }
+
+    /**
+     * Sets up reading the {@code [xFirst, xLast)} source columns, where
+     * the pixel at {@code (xFirst, yFirst)} is at {@code src[srcOffset]}.
+     * Subsequent {@code x} arguments are relative to {@code xFirst}.
+     * With {@code ringRows > 0} the source rows wrap around in a ring
+     * buffer of that many rows.
+     */
+    final void origin(int srcOffset, int srcScanline, int ringRows,
+                      int xFirst, int xLast, int yFirst) {
+        this.srcOffset = srcOffset;
+        this.srcScanline = srcScanline;
+        this.ringRows = ringRows;
+        this.xFirst = xFirst;
+        this.xLast = xLast;
+        this.yFirst = yFirst;
+    }
+
+    //index of the (absent) pixel at (0, y)
+    static int rowStart(int y, int srcOffset, int srcScanline, int ringRows, int xFirst, int yFirst) {
+        final int row = (ringRows > 0) ? Math.floorMod(y - yFirst, ringRows) : y - yFirst;
+        return srcOffset + row * srcScanline - xFirst;
+    }
+
+    private int rowStart(int y) {
+        return rowStart(y, srcOffset, srcScanline, ringRows, xFirst, yFirst);
     }
 
     final Kernel_3x3 kernel_3x3() {
@@ -455,6 +1129,14 @@ final class Kernel_4x4 {
             positionYDuplicate(y);
         }
 
+        if (s_m1 != NO_ROW && s_p2 != NO_ROW) {
+            interiorFirst = -xFirst - 2;
+            interiorEnd = srcWidth - xFirst - 2;
+        } else {
+            interiorFirst = 0;
+            interiorEnd = 0;
+        }
+
         readDhlp(-4); //hack: read a, e, i, m at x = -1
         a = d;
         e = h;
@@ -477,24 +1159,24 @@ final class Kernel_4x4 {
     }
 
     private final void positionYTransparent(int y) {
-        s_m1 = 0 <= y - 1 && y - 1 < srcHeight ? srcWidth * (y - 1) : -1;
-        s_0  = 0 <= y     && y     < srcHeight ? srcWidth *  y      : -1;
-        s_p1 = 0 <= y + 1 && y + 1 < srcHeight ? srcWidth * (y + 1) : -1;
-        s_p2 = 0 <= y + 2 && y + 2 < srcHeight ? srcWidth * (y + 2) : -1;
+        s_m1 = 0 <= y - 1 && y - 1 < srcHeight ? rowStart(y - 1) : NO_ROW;
+        s_0  = 0 <= y     && y     < srcHeight ? rowStart(y)     : NO_ROW;
+        s_p1 = 0 <= y + 1 && y + 1 < srcHeight ? rowStart(y + 1) : NO_ROW;
+        s_p2 = 0 <= y + 2 && y + 2 < srcHeight ? rowStart(y + 2) : NO_ROW;
     }
 
     private final void positionYDuplicate(int y) {
-        s_m1 = srcWidth * clamp(y - 1, 0, srcHeight - 1);
-        s_0  = srcWidth * clamp(y,     0, srcHeight - 1);
-        s_p1 = srcWidth * clamp(y + 1, 0, srcHeight - 1);
-        s_p2 = srcWidth * clamp(y + 2, 0, srcHeight - 1);
+        s_m1 = rowStart(clamp(y - 1, 0, srcHeight - 1));
+        s_0  = rowStart(clamp(y,     0, srcHeight - 1));
+        s_p1 = rowStart(clamp(y + 1, 0, srcHeight - 1));
+        s_p2 = rowStart(clamp(y + 2, 0, srcHeight - 1));
     }
 
     static int clamp(int v, int lo, int hi) {
         return (v < lo) ? lo : (v > hi) ? hi : v;
     }
 
-    final void readDhlp(int x) //(x, y) is at kernel position F
+    final void readDhlp(int x) //(xFirst + x, y) is at kernel position F
     {
         if (withAlpha) {
             readDhlpTransparent(x);
@@ -503,14 +1185,35 @@ final class Kernel_4x4 {
         }
     }
 
+    /**
+     * Like {@code readDhlp(x)}, without the border handling.  Valid for
+     * {@code x} in the {@code [interiorFirst(), interiorEnd())} range of
+     * the current row, only.
+     */
+    final void readDhlpInterior(int x) {
+        final int x_p2 = xFirst + x + 2;
+        d = src[s_m1 + x_p2];
+        h = src[s_0  + x_p2];
+        l = src[s_p1 + x_p2];
+        p = src[s_p2 + x_p2];
+    }
+
+    final int interiorFirst() {
+        return interiorFirst;
+    }
+
+    final int interiorEnd() {
+        return interiorEnd;
+    }
+
     private final void readDhlpTransparent(int x) {
-        final int x_p2 = x + 2;
+        final int x_p2 = xFirst + x + 2;
         if (0 <= x_p2 && x_p2 < srcWidth)
         {
-            d = (s_m1 >= 0) ? src[s_m1 + x_p2] : 0;
-            h = (s_0  >= 0) ? src[s_0  + x_p2] : 0;
-            l = (s_p1 >= 0) ? src[s_p1 + x_p2] : 0;
-            p = (s_p2 >= 0) ? src[s_p2 + x_p2] : 0;
+            d = (s_m1 != NO_ROW) ? src[s_m1 + x_p2] : 0;
+            h = (s_0  != NO_ROW) ? src[s_0  + x_p2] : 0;
+            l = (s_p1 != NO_ROW) ? src[s_p1 + x_p2] : 0;
+            p = (s_p2 != NO_ROW) ? src[s_p2 + x_p2] : 0;
         }
         else
         {
@@ -522,13 +1225,56 @@ final class Kernel_4x4 {
     }
 
     private final void readDhlpDuplicate(int x) {
-        final int xc_p2 = clamp(x + 2, 0, srcWidth - 1);
+        final int xc_p2 = clamp(xFirst + x + 2, 0, srcWidth - 1);
         d = src[s_m1 + xc_p2];
         h = src[s_0  + xc_p2];
         l = src[s_p1 + xc_p2];
         p = src[s_p2 + xc_p2];
     }
 
+    final boolean uniform() {
+        final int col = f;
+        return a == col && b == col && c == col && d == col
+                && e == col && g == col && h == col
+                && i == col && j == col && k == col && l == col
+                && m == col && n == col && o == col && p == col;
+    }
+
+    /**
+     * Assumes {@code uniform()} at position {@code x}.
+     *
+     * @return  the (exclusive) end of the run of positions, starting at
+     *          {@code x}, for which the kernel remains uniform
+     */
+    final int uniformRunEnd(int x) {
+        // Position x' has a uniform kernel if column (x' + 2) matches
+        final int col = f;
+        final int from = xFirst + x + 3;
+        int end = xLast + 2;
+        end = rowRunEnd(s_m1, from, end, col);
+        end = rowRunEnd(s_0,  from, end, col);
+        end = rowRunEnd(s_p1, from, end, col);
+        end = rowRunEnd(s_p2, from, end, col);
+        return end - 2 - xFirst;
+    }
+
+    private int rowRunEnd(int rowStart, int from, int to, int col) {
+        if (rowStart == NO_ROW) //transparent row outside the image
+            return (col == 0) ? to : from;
+
+        final int limit = Math.min(to, srcWidth);
+        int x = from;
+        while (x < limit && src[rowStart + x] == col)
+            ++x;
+
+        if (x < limit || x >= to)
+            return x;
+
+        //past the right edge, see readDhlp()
+        final int edge = withAlpha ? 0 : src[rowStart + srcWidth - 1];
+        return (edge == col) ? to : x;
+    }
+
     final void shift() {
         a = b;    //shift kernel to the left
         e = f;    // -----------------
@@ -572,103 +1318,206 @@ final class Kernel_4x4 {
 */
 final class Kernel_3x3 {
 
+    static final int A = 0, B = 1, C = 2,
+                     D = 3, E = 4, F = 5,
+                     G = 6, H = 7, I = 8;
+
+    //source position for each position of the rotated view
+    private static final int[][] ROTATION = {
+        { A, B, C, D, E, F, G, H, I }, // ROT_0
+        { G, D, A, H, E, B, I, F, C }, // ROT_90
+        { I, H, G, F, E, D, C, B, A }, // ROT_180
+        { C, F, I, B, E, H, A, D, G }  // ROT_270
+    };
+
     private final Kernel_4x4 ker4;
 
-    private RotationDegree rotDeg = ROT_0;
+    private final int[] pix = new int[9];
+
+    //distances from the center, computed on first use for the current pixel
+    final double[] distE = new double[9];
+
+    private int[] rot = ROTATION[ROT_0.ordinal()];
 
     Kernel_3x3(Kernel_4x4 ker4) {
         this.ker4 = ker4;
     }
 
-    final int a() {
-        switch (rotDeg) {
-        default:      return ker4.a;
-        case ROT_90:  return ker4.i;
-        case ROT_180: return ker4.k;
-        case ROT_270: return ker4.c;
-        }
+    //take the 3x3 area around the current Kernel_4x4 position F
+    final void load() {
+        final int[] pix = this.pix;
+        pix[A] = ker4.a; pix[B] = ker4.b; pix[C] = ker4.c;
+        pix[D] = ker4.e; pix[E] = ker4.f; pix[F] = ker4.g;
+        pix[G] = ker4.i; pix[H] = ker4.j; pix[I] = ker4.k;
+        Arrays.fill(distE, Double.NaN);
     }
 
-    final int b() {
-        switch (rotDeg) {
-        default:      return ker4.b;
-        case ROT_90:  return ker4.e;
-        case ROT_180: return ker4.j;
-        case ROT_270: return ker4.g;
-        }
+    final int a() { return pix[rot[A]]; }
+    final int b() { return pix[rot[B]]; }
+    final int c() { return pix[rot[C]]; }
+    final int d() { return pix[rot[D]]; }
+    final int e() { return pix[E]; } // center
+    final int f() { return pix[rot[F]]; }
+    final int g() { return pix[rot[G]]; }
+    final int h() { return pix[rot[H]]; }
+    final int i() { return pix[rot[I]]; }
+
+    //index of the given position of the rotated view, in pix and distE
+    final int rotated(int pos) { return rot[pos]; }
+
+    final int pixel(int index) { return pix[index]; }
+
+    final void rotDeg(RotationDegree deg) {
+        this.rot = ROTATION[deg.ordinal()];
     }
 
-    final int c() {
-        switch (rotDeg) {
-        default:      return ker4.c;
-        case ROT_90:  return ker4.a;
-        case ROT_180: return ker4.i;
-        case ROT_270: return ker4.k;
-        }
+    //@Override
+    //public String toString() {
+    //    return String.format("| %08X | %08X | %08X |%n"
+    //                         + "| %08X | %08X | %08X |%n"
+    //                         + "| %08X | %08X | %08X |",
+    //                         a(), b(), c(),
+    //                         d(), e(), f(),
+    //                         g(), h(), i());
+    //}
+
+}
+
+
+//palette colors along with their pairwise distances
+final class Palette {
+
+    final int[] colors;
+    final PaletteDistance dist;
+    final PaletteDistance blendDist;
+    //applies the distances, with the batch supplied per scaling operation
+    Xbrz scaler;
+
+    Palette(int[] colors, ColorDistance dist, ColorDistance blendDist) {
+        this.colors = colors.clone();
+        this.dist = new PaletteDistance(dist, colors);
+        this.blendDist = (blendDist == dist) ? this.dist
+                                             : new PaletteDistance(blendDist, colors);
     }
 
-    final int d() {
-        switch (rotDeg) {
-        default:      return ker4.e;
-        case ROT_90:  return ker4.j;
-        case ROT_180: return ker4.g;
-        case ROT_270: return ker4.b;
-        }
+}
+
+
+/*
+Color distances of diagonal neighbours used by the corner preprocessing.  Every
+pair is visited by up to 5 different kernel positions, in the current and in the
+subsequent rows - the distances are computed once on first use and kept in a
+ring of buffers for the row pairs (y - 1, y), (y, y + 1) and (y + 1, y + 2).
+If a batch color distance is available, the row pairs inside the image get
+computed in bulk, up front:
+---------
+| A | B |   rise: dist(C, B) - lower-left to upper-right
+|---+---|   fall: dist(A, D) - upper-left to lower-right
+| C | D |
+---------   stored at the column of A, C */
+final class DistanceCache {
+
+    static final int OFFSET = 2; //kernel reads from x = -2 to width + 1
+
+    private static final int RING_SIZE = 3;
+
+    private final double[][] rise = new double[RING_SIZE][];
+    private final double[][] fall = new double[RING_SIZE][];
+    private final int[] rowPair = new int[RING_SIZE];
+    private int length;
+
+    private int[] src;
+    private int srcWidth;
+    private int srcHeight;
+    private ColorDistanceBatch batch;
+
+    private int srcOffset;
+    private int srcScanline;
+    private int ringRows;
+    private int xFirst;
+    private int xLast;
+    private int yFirst;
+
+    double[] rise_m1, rise_0, rise_p1;
+    double[] fall_m1, fall_0, fall_p1;
+
+    DistanceCache() {}
+
+    final void init(int[] src, int srcWidth, int srcHeight, ColorDistanceBatch batch) {
+        this.src = src;
+        this.srcWidth = srcWidth;
+        this.srcHeight = srcHeight;
+        this.batch = batch;
     }
 
-    final int e() {
-        return ker4.f; // center
+    final void release() {
+        this.src = null;
+        this.batch = null; //may reference palette indices
     }
 
-    final int f() {
-        switch (rotDeg) {
-        default:      return ker4.g;
-        case ROT_90:  return ker4.b;
-        case ROT_180: return ker4.e;
-        case ROT_270: return ker4.j;
-        }
+    /**
+     * @see  Kernel_4x4#origin(int, int, int, int, int, int)
+     */
+    final void origin(int srcOffset, int srcScanline, int ringRows,
+                      int xFirst, int xLast, int yFirst) {
+        this.srcOffset = srcOffset;
+        this.srcScanline = srcScanline;
+        this.ringRows = ringRows;
+        this.xFirst = xFirst;
+        this.xLast = xLast;
+        this.yFirst = yFirst;
+        reset(xLast - xFirst + OFFSET + 1);
     }
 
-    final int g() {
-        switch (rotDeg) {
-        default:      return ker4.i;
-        case ROT_90:  return ker4.k;
-        case ROT_180: return ker4.c;
-        case ROT_270: return ker4.a;
+    private void reset(int length) {
+        if (rise[0] == null || rise[0].length < length) {
+            for (int i = 0; i < RING_SIZE; i++) {
+                rise[i] = new double[length];
+                fall[i] = new double[length];
+            }
         }
+        this.length = length;
+        Arrays.fill(rowPair, Integer.MIN_VALUE);
     }
 
-    final int h() {
-        switch (rotDeg) {
-        default:      return ker4.j;
-        case ROT_90:  return ker4.g;
-        case ROT_180: return ker4.b;
-        case ROT_270: return ker4.e;
-        }
+    final void positionY(int y) {
+        rise_m1 = rise[slot(y - 1)];
+        fall_m1 = fall[slot(y - 1)];
+        rise_0  = rise[slot(y)];
+        fall_0  = fall[slot(y)];
+        rise_p1 = rise[slot(y + 1)];
+        fall_p1 = fall[slot(y + 1)];
     }
 
-    final int i() {
-        switch (rotDeg) {
-        default:      return ker4.k;
-        case ROT_90:  return ker4.c;
-        case ROT_180: return ker4.a;
-        case ROT_270: return ker4.i;
+    private int slot(int y) {
+        final int slot = Math.floorMod(y, RING_SIZE);
+        if (rowPair[slot] != y) {
+            rowPair[slot] = y;
+            Arrays.fill(rise[slot], 0, length, Double.NaN);
+            Arrays.fill(fall[slot], 0, length, Double.NaN);
+            if (batch != null && 0 <= y && y + 1 < srcHeight)
+                calcRowPair(slot, y);
         }
+        return slot;
     }
 
-    final void rotDeg(RotationDegree deg) {
-        this.rotDeg = deg;
+    private int rowStart(int y) {
+        return Kernel_4x4.rowStart(y, srcOffset, srcScanline, ringRows, xFirst, yFirst);
     }
 
-    //@Override
-    //public String toString() {
-    //    return String.format("| %08X | %08X | %08X |%n"
-    //                         + "| %08X | %08X | %08X |%n"
-    //                         + "| %08X | %08X | %08X |",
-    //                         a(), b(), c(),
-    //                         d(), e(), f(),
-    //                         g(), h(), i());
-    //}
+    private void calcRowPair(int slot, int y) {
+        //columns of the pairs within the image bounds
+        final int first = Math.max(xFirst - OFFSET, 0);
+        final int last  = Math.min(xLast + 1, srcWidth - 1);
+        if (first >= last)
+            return;
+
+        final int s_0  = rowStart(y) + first;
+        final int s_p1 = rowStart(y + 1) + first;
+        final int trgPos = first - xFirst + OFFSET;
+        batch.calc(src, s_p1, s_0 + 1, rise[slot], trgPos, last - first);
+        batch.calc(src, s_0, s_p1 + 1, fall[slot], trgPos, last - first);
+    }
 
 }
 
@@ -703,18 +1552,7 @@ final class BlendResult
     /**/blend_f, blend_g,
     /**/blend_j, blend_k;
 
-    private BlendResult() {}
-
-    private static final ThreadLocal<BlendResult> instance = new ThreadLocal<>();
-
-    static BlendResult instance() {
-        BlendResult result = instance.get();
-        if (result == null) {
-            result = new BlendResult();
-            instance.set(result);
-        }
-        return result;
-    }
+    BlendResult() {}
 
     final void reset() {
         blend_f = blend_g = blend_j = blend_k = BLEND_NONE;
@@ -734,15 +1572,21 @@ final class BlendResult
 
 final class BlendInfo {
 
-    static byte rotate(byte b, RotationDegree rotDeg) {
-        switch (rotDeg) {
-        default:      return b;
-        case ROT_90:  return (byte) (((b << 2) & 0xFF) | ((b & 0xFF) >> 6));
-        case ROT_180: return (byte) (((b << 4) & 0xFF) | ((b & 0xFF) >> 4));
-        case ROT_270: return (byte) (((b << 6) & 0xFF) | ((b & 0xFF) >> 2));
+    //rotated values of all blend info bytes, for each rotation degree
+    private static final byte[] ROTATION = new byte[4 << Byte.SIZE];
+    static {
+        for (int b = 0; b < 0x100; b++) {
+            ROTATION[ROT_0.ordinal()   << Byte.SIZE | b] = (byte) b;
+            ROTATION[ROT_90.ordinal()  << Byte.SIZE | b] = (byte) (((b << 2) & 0xFF) | (b >> 6));
+            ROTATION[ROT_180.ordinal() << Byte.SIZE | b] = (byte) (((b << 4) & 0xFF) | (b >> 4));
+            ROTATION[ROT_270.ordinal() << Byte.SIZE | b] = (byte) (((b << 6) & 0xFF) | (b >> 2));
         }
     }
 
+    static byte rotate(byte b, RotationDegree rotDeg) {
+        return ROTATION[rotDeg.ordinal() << Byte.SIZE | (b & 0xFF)];
+    }
+
     static boolean blendingNeeded(byte b) {
         return b != BLEND_NONE;
     }
@@ -0,0 +1,125 @@
+package io.github.stanio.xbrz;
+
+import static jdk.incubator.vector.VectorOperators.I2D;
+import static jdk.incubator.vector.VectorOperators.LSHR;
+import static jdk.incubator.vector.VectorOperators.SQRT;
+
+import java.util.function.Function;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Provides Vector API implementation of {@code ColorDistanceBatch} for the
+ * {@code ColorDistanceYCbCr} (optionally {@code withAlpha}) color distance.
+ * <p>
+ * The lane-wise computations follow the same order of operations as the
+ * scalar implementation, so the results are identical.</p>
+ *
+ * @see  ColorDistanceBatch
+ */
+final class ColorDistanceVector implements Function<ColorDistance, ColorDistanceBatch> {
+
+    public ColorDistanceVector() {
+        Module vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector")
+                .orElseThrow(() -> new UnsupportedOperationException("jdk.incubator.vector not present"));
+        ColorDistanceVector.class.getModule().addReads(vectorModule);
+    }
+
+    @Override
+    public ColorDistanceBatch apply(ColorDistance dist) {
+        ColorDistance baseDist = dist;
+        boolean withAlpha = false;
+        if (dist instanceof ColorDistanceAlpha) {
+            baseDist = ((ColorDistanceAlpha) dist).dist;
+            withAlpha = true;
+        }
+        if (baseDist.getClass() != ColorDistanceYCbCr.class)
+            return null;
+
+        return new YCbCr(dist, ((ColorDistanceYCbCr) baseDist).lumaWeight, withAlpha);
+    }
+
+
+    static final class YCbCr extends ColorDistanceBatch {
+
+        private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class,
+                VectorShape.forBitSize(DOUBLE_SPECIES.length() * Integer.SIZE));
+
+        private final ColorDistance dist;
+        private final double lumaWeight;
+        private final boolean withAlpha;
+
+        YCbCr(ColorDistance dist, double lumaWeight, boolean withAlpha) {
+            this.dist = dist;
+            this.lumaWeight = lumaWeight;
+            this.withAlpha = withAlpha;
+        }
+
+        private static IntVector channel(IntVector pix, int shift) {
+            return pix.lanewise(LSHR, shift).and(0xFF);
+        }
+
+        private static DoubleVector toDouble(IntVector vector) {
+            return (DoubleVector) vector.convertShape(I2D, DOUBLE_SPECIES, 0);
+        }
+
+        @Override
+        void calc(int[] src, int pos1, int pos2, double[] trg, int trgPos, int length) {
+            // Separate loops keep vectors from merging at control flow
+            // joins, which would prevent the JIT from eliminating them.
+            final int bound = INT_SPECIES.loopBound(length);
+            if (withAlpha) {
+                calcAlpha(src, pos1, pos2, trg, trgPos, bound);
+            } else {
+                calcOpaque(src, pos1, pos2, trg, trgPos, bound);
+            }
+
+            for (int i = bound; i < length; i++) {
+                trg[trgPos + i] = dist.calc(src[pos1 + i], src[pos2 + i]);
+            }
+        }
+
+        private void calcOpaque(int[] src, int pos1, int pos2, double[] trg, int trgPos, int bound) {
+            for (int i = 0; i < bound; i += INT_SPECIES.length()) {
+                IntVector pix1 = IntVector.fromArray(INT_SPECIES, src, pos1 + i);
+                IntVector pix2 = IntVector.fromArray(INT_SPECIES, src, pos2 + i);
+                distYCbCr(pix1, pix2).intoArray(trg, trgPos + i);
+            }
+        }
+
+        private void calcAlpha(int[] src, int pos1, int pos2, double[] trg, int trgPos, int bound) {
+            for (int i = 0; i < bound; i += INT_SPECIES.length()) {
+                IntVector pix1 = IntVector.fromArray(INT_SPECIES, src, pos1 + i);
+                IntVector pix2 = IntVector.fromArray(INT_SPECIES, src, pos2 + i);
+                DoubleVector a1 = toDouble(channel(pix1, 24));
+                DoubleVector a2 = toDouble(channel(pix2, 24));
+                a1.min(a2).div(255.0).mul(distYCbCr(pix1, pix2))
+                        .add(a1.sub(a2).abs())
+                        .intoArray(trg, trgPos + i);
+            }
+        }
+
+        private DoubleVector distYCbCr(IntVector pix1, IntVector pix2) {
+            DoubleVector r_diff = toDouble(channel(pix1, 16).sub(channel(pix2, 16)));
+            DoubleVector g_diff = toDouble(channel(pix1,  8).sub(channel(pix2,  8)));
+            DoubleVector b_diff = toDouble(channel(pix1,  0).sub(channel(pix2,  0)));
+
+            DoubleVector y = r_diff.mul(ColorDistanceYCbCr.k_r)
+                                   .add(g_diff.mul(ColorDistanceYCbCr.k_g))
+                                   .add(b_diff.mul(ColorDistanceYCbCr.k_b));
+            DoubleVector c_b = b_diff.sub(y).mul(ColorDistanceYCbCr.scale_b);
+            DoubleVector c_r = r_diff.sub(y).mul(ColorDistanceYCbCr.scale_r);
+            // 1.0 * y == y, exactly
+            DoubleVector y_w = y.mul(lumaWeight);
+
+            return y_w.mul(y_w).add(c_b.mul(c_b)).add(c_r.mul(c_r)).lanewise(SQRT);
+        }
+
+    } // class YCbCr
+
+
+}
@@ -0,0 +1,20 @@
+/*
+ * This module, both source code and documentation,
+ * is in the Public Domain, and comes with NO WARRANTY.
+ */
+
+/**
+ * Provides a Java implementation of the xBRZ algorithm ("Scale by rules" &ndash;
+ * high quality image upscaling filter by Zenju).
+ * <p>
+ * The optional {@code jdk.incubator.vector} module, when resolved (f.e. using
+ * {@code --add-modules jdk.incubator.vector}), enables a vectorized color
+ * distance calculation.</p>
+ */
+module io.github.stanio.xbrz.core {
+
+    requires static jdk.incubator.vector;
+
+    exports io.github.stanio.xbrz;
+
+}
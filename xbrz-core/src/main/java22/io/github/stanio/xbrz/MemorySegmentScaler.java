@@ -0,0 +1,62 @@
+package io.github.stanio.xbrz;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Streams the pixels of memory segments through {@code StreamingXbrz}.
+ *
+ * @see  MemorySegmentXbrz
+ */
+final class MemorySegmentScaler implements MemorySegmentXbrz.Provider {
+
+    public MemorySegmentScaler() {
+        // empty
+    }
+
+    @Override
+    public void scaleImage(Xbrz xbrz, Object src, Object trg,
+                           int srcWidth, int srcHeight, ByteOrder byteOrder) {
+        scaleImage(xbrz, segment(src, "src"), segment(trg, "trg"),
+                   srcWidth, srcHeight, JAVA_INT_UNALIGNED.withOrder(byteOrder));
+    }
+
+    private static MemorySegment segment(Object obj, String name) {
+        if (obj instanceof MemorySegment segment)
+            return segment;
+
+        throw new IllegalArgumentException("Not a MemorySegment " + name + ": "
+                + (obj == null ? null : obj.getClass().getName()));
+    }
+
+    private static void scaleImage(Xbrz xbrz, MemorySegment src, MemorySegment trg,
+                                   int srcWidth, int srcHeight, ValueLayout.OfInt pixelLayout) {
+        if (srcWidth <= 0 || srcHeight <= 0)
+            return;
+
+        final long srcRowSize = srcWidth * pixelLayout.byteSize();
+        final long trgBlockSize = (long) srcWidth * xbrz.factor() * xbrz.factor() * pixelLayout.byteSize();
+        if (src.byteSize() < srcRowSize * srcHeight)
+            throw new IndexOutOfBoundsException("Source segment too small: " + src.byteSize());
+        if (trg.byteSize() < trgBlockSize * srcHeight)
+            throw new IndexOutOfBoundsException("Target segment too small: " + trg.byteSize());
+
+        Xbrz.Workspace state = Xbrz.Workspace.local();
+        try {
+            StreamingXbrz stream = new StreamingXbrz(xbrz, state, srcWidth, srcHeight, (pixels, y) ->
+                    MemorySegment.copy(pixels, 0, trg, pixelLayout,
+                                       trgBlockSize * (y / xbrz.factor()), pixels.length));
+            for (int y = 0; y < srcHeight; y++) {
+                MemorySegment.copy(src, pixelLayout, srcRowSize * y,
+                                   stream.srcRows(), stream.nextRow(), srcWidth);
+                stream.rowPushed();
+            }
+        } finally {
+            state.release();
+        }
+    }
+
+}
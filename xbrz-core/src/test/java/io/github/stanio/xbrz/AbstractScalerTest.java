@@ -1,10 +1,18 @@
 package io.github.stanio.xbrz;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.ImageIO;
 
@@ -20,6 +28,24 @@ public abstract class AbstractScalerTest {
         static ColorDistance colorDistance = ColorDistance.bufferedYCbCr(5);
     }
 
+    private static class QuantizedYCbCr {
+        static ColorDistance colorDistance = ColorDistance.quantizedYCbCr(5);
+    }
+
+    private static final class Pixels {
+        final String name;
+        final int width;
+        final int height;
+        final int[] data;
+
+        Pixels(String name, int width, int height, int[] data) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.data = data;
+        }
+    }
+
     @Rule
     public TestName testName = new TestName();
 
@@ -64,25 +90,320 @@ public abstract class AbstractScalerTest {
     }
 
     @Test
-    public void alhpaNoAlpha() throws Exception {
-        BufferedImage source = ImageIO.read(AbstractScalerTest.class.getResource("test/gbamockup.png"));
-        int srcWidth = source.getWidth();
-        int srcHeight = source.getHeight();
-        int[] srcPixels = new int[srcWidth * srcHeight];
-        source.getRGB(0, 0, srcWidth, srcHeight, srcPixels, 0, srcWidth);
+    public void colorDistanceYCbCrQuantized() throws Exception {
+        // Expected result differences around some edges.
+        testImage(new Xbrz(xbrz().scale(), false,
+                new ScalerCfg(), QuantizedYCbCr.colorDistance), "test/gbamockup", 3.0);
+    }
 
-        int factor = xbrz().scale();
-        int destWidth = srcWidth * factor;
-        int destHeight = srcHeight * factor;
-        int[] destPixels = new int[destWidth * destHeight];
-        new Xbrz(factor, true).scaleImage(srcPixels, destPixels, srcWidth, srcHeight);
+    @Test
+    public void squaredDistance() throws Exception {
+        // Blending decisions on squared distances may differ only at
+        // the exact threshold boundaries due to rounding.
+        testImage(Xbrz.squaredDistance(xbrz().scale(), false, new ScalerCfg(),
+                ColorDistance.yCbCr(1)), "test/gbamockup", 0.001);
+    }
+
+    @Test
+    public void squaredDistanceAlpha() throws Exception {
+        testImage(Xbrz.squaredDistance(xbrz().scale(), true, new ScalerCfg(),
+                ColorDistance.yCbCr(1)), "test/down-arrow", 0.0001);
+    }
+
+    @Test
+    public void premultipliedAlpha() throws Exception {
+        testPremultiplied("test/down-arrow", 1.0);
+        testPremultiplied("test/open-folder", 1.0);
+    }
+
+    private void testPremultiplied(String imageName, double deviation) throws IOException {
+        Xbrz xbrz = Xbrz.premultipliedAlpha(xbrz().scale(), new ScalerCfg(),
+                                            ColorDistance.yCbCr(1));
+        Pixels source = loadPixels(imageName);
+        int[] srcPixels = source.data;
+        for (int i = 0; i < srcPixels.length; i++) {
+            srcPixels[i] = premultiply(srcPixels[i]);
+        }
 
-        int[] dest2Pixels = new int[destWidth * destHeight];
-        new Xbrz(factor, false).scaleImage(srcPixels, dest2Pixels, srcWidth, srcHeight);
+        int[] destPixels = xbrz.scaleImage(srcPixels, null, source.width, source.height);
+
+        int[] refPixels = loadReference(imageName, xbrz.scale()).data;
+        // Premultiplied gradients round differently, by a unit or so.
+        int mismatch = 0;
+        for (int i = 0; i < refPixels.length; i++) {
+            int expected = premultiply(refPixels[i]);
+            for (int shift = 0; shift < 32; shift += 8) {
+                if (Math.abs((destPixels[i] >>> shift & 0xFF)
+                             - (expected >>> shift & 0xFF)) > 2) {
+                    mismatch += 1;
+                    break;
+                }
+            }
+        }
+        double percent = mismatch * 100.0 / refPixels.length;
+        String message = String.format("Pixel mismatch: %d (%.3f%%)", mismatch, percent);
+        System.out.printf("%s [%s-%dx %s]%n", message, testName.getMethodName(), xbrz.scale(), imageName);
+        assertTrue(message, percent <= deviation);
+    }
+
+    private static int premultiply(int argb) {
+        int a = argb >>> 24;
+        return a << 24
+                | (argb >> 16 & 0xFF) * a / 255 << 16
+                | (argb >> 8 & 0xFF) * a / 255 << 8
+                | (argb & 0xFF) * a / 255;
+    }
+
+    @Test
+    public void fixedPoint() throws Exception {
+        // Corner preprocessing on squared distances changes some edge shapes.
+        testFixedPoint("test/gbamockup", false, 1.0);
+        testFixedPoint("test/basic-shapes", true, 0.1);
+        testFixedPoint("test/down-arrow", true, 0.5);
+    }
+
+    private void testFixedPoint(String imageName, boolean withAlpha, double deviation) throws IOException {
+        Pixels source = loadPixels(imageName);
+        Xbrz fixedPoint = Xbrz.fixedPoint(xbrz().scale(), withAlpha, new ScalerCfg());
+        assertMatchesScaled(new Xbrz(fixedPoint.scale(), withAlpha), source,
+                            fixedPoint.scaleImage(source.data, null, source.width, source.height),
+                            deviation);
+    }
+
+    @Test
+    public void alhpaNoAlpha() throws Exception {
+        Pixels source = loadPixels("test/gbamockup");
+        int factor = xbrz().scale();
+        int[] destPixels = new Xbrz(factor, true)
+                .scaleImage(source.data, null, source.width, source.height);
 
         // Differences on image borders expected.
+        assertMatchesScaled(new Xbrz(factor, false), source, destPixels, 1.0);
+    }
+
+    @Test
+    public void parallelStripes() throws Exception {
+        Pixels source = loadPixels("test/gbamockup");
+        Xbrz xbrz = xbrz();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertMatchesScaled(xbrz, source, xbrz.scaleImageParallel(source.data, null,
+                    source.width, source.height, pool, 3));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sharedWorkspace() throws Exception {
+        Xbrz xbrz = xbrz();
+        Xbrz.Workspace workspace = new Xbrz.Workspace();
+        for (String name : new String[] { "test/gbamockup", "test/open-folder" }) {
+            Pixels source = loadPixels(name);
+            assertMatchesScaled(xbrz, source, xbrz.scaleImage(workspace, source.data, null,
+                                                              source.width, source.height));
+        }
+    }
+
+    @Test
+    public void blendMap() throws Exception {
+        Xbrz xbrz = xbrz();
+        Xbrz analysis = new Xbrz(xbrz.scale() == 2 ? 3 : 2, true);
+        for (String name : new String[] { "test/gbamockup", "test/open-folder" }) {
+            Pixels source = loadPixels(name);
+            BlendMap map = analysis.blendMap(source.data, source.width, source.height);
+            assertMatchesScaled(xbrz, source, xbrz.scaleImage(map, null));
+        }
+    }
+
+    @Test
+    public void scaleAll() throws Exception {
+        Xbrz xbrz = xbrz();
+        Xbrz other = new Xbrz(xbrz.scale() == 2 ? 3 : 2, true);
+        for (String name : new String[] { "test/gbamockup", "test/open-folder" }) {
+            Pixels source = loadPixels(name);
+            int[][] allPixels = xbrz.scaleAll(source.data, source.width, source.height,
+                                              other.scale(), xbrz.scale());
+
+            assertMatchesScaled(other, source, allPixels[0]);
+            assertMatchesScaled(xbrz, source, allPixels[1]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blendMapAlphaMismatch() throws Exception {
+        BlendMap map = new Xbrz(2, false).blendMap(new int[4], 2, 2);
+        new Xbrz(xbrz().scale(), true).scaleImage(map, null);
+    }
+
+    @Test
+    public void stridedBuffers() throws Exception {
+        Pixels source = loadPixels("test/open-folder");
+        int srcWidth = source.width;
+        int srcHeight = source.height;
+        int srcScanline = srcWidth + 5;
+        int[] srcPixels = new int[3 + srcScanline * srcHeight];
+        for (int y = 0; y < srcHeight; y++) {
+            System.arraycopy(source.data, y * srcWidth, srcPixels, 3 + y * srcScanline, srcWidth);
+        }
+
+        Xbrz xbrz = xbrz();
+        int factor = xbrz.scale();
+        int trgWidth = srcWidth * factor;
+        int trgScanline = trgWidth + 7;
+        int[] dest2Pixels = new int[11 + trgScanline * srcHeight * factor];
+        xbrz.scaleImage(srcPixels, 3, srcScanline, srcWidth, srcHeight,
+                        dest2Pixels, 11, trgScanline);
+
+        int[] stripped = new int[trgWidth * srcHeight * factor];
+        for (int y = 0; y < srcHeight * factor; y++) {
+            System.arraycopy(dest2Pixels, 11 + y * trgScanline, stripped, y * trgWidth, trgWidth);
+        }
+        assertMatchesScaled(xbrz, source, stripped);
+    }
+
+    @Test
+    public void nioBuffers() throws Exception {
+        Pixels source = loadPixels("test/open-folder");
+        int srcWidth = source.width;
+        int srcHeight = source.height;
+        int[] srcPixels = source.data;
+
+        Xbrz xbrz = xbrz();
+        int[] destPixels = xbrz.scaleImage(srcPixels, null, srcWidth, srcHeight);
+
+        ByteBuffer src = ByteBuffer.allocateDirect(4 * srcPixels.length).order(ByteOrder.nativeOrder());
+        src.asIntBuffer().put(srcPixels);
+        ByteBuffer trg = ByteBuffer.allocateDirect(4 * (destPixels.length + 1)).order(ByteOrder.nativeOrder());
+        trg.position(4);
+        xbrz.scaleImage(src, trg, srcWidth, srcHeight);
+
+        int[] dest2Pixels = new int[destPixels.length];
+        trg.asIntBuffer().get(dest2Pixels);
+        assertEquals("source position", 0, src.position());
         assertPixels(testName.getMethodName()
-                + "-" + factor + "x", destPixels, dest2Pixels, 1.0);
+                + "-" + xbrz.scale() + "x", dest2Pixels, destPixels, 0.0);
+
+        IntBuffer heapTrg = IntBuffer.allocate(destPixels.length + 3);
+        heapTrg.position(3);
+        xbrz.scaleImage(IntBuffer.wrap(srcPixels), heapTrg, srcWidth, srcHeight);
+        assertArrayEquals(destPixels, Arrays.copyOfRange(heapTrg.array(), 3, heapTrg.capacity()));
+    }
+
+    @Test
+    public void byteInterleaved() throws Exception {
+        testPixelFormat(xbrz(), PixelFormat.ABGR, "test/open-folder");
+        testPixelFormat(new Xbrz(xbrz().scale(), false), PixelFormat.BGR, "test/gbamockup");
+    }
+
+    private void testPixelFormat(Xbrz xbrz, PixelFormat format, String imageName) throws IOException {
+        Pixels source = loadPixels(imageName);
+        int srcWidth = source.width;
+        int srcHeight = source.height;
+        int[] srcPixels = source.data;
+        int mask = (format.bytesPerPixel() == 4) ? -1 : 0x00FFFFFF;
+        for (int i = 0; i < srcPixels.length; i++) {
+            srcPixels[i] |= ~mask;
+        }
+
+        int[] destPixels = xbrz.scaleImage(srcPixels, null, srcWidth, srcHeight);
+
+        int bpp = format.bytesPerPixel();
+        byte[] srcBytes = new byte[srcPixels.length * bpp];
+        format.fromARGB(srcPixels, 0, srcBytes, 0, srcPixels.length);
+        int trgWidth = srcWidth * xbrz.scale();
+        byte[] trgBytes = new byte[destPixels.length * bpp];
+        xbrz.scaleImage(format, srcBytes, 0, srcWidth * bpp, srcWidth, srcHeight,
+                        trgBytes, 0, trgWidth * bpp);
+
+        int[] dest2Pixels = new int[destPixels.length];
+        format.toARGB(trgBytes, 0, dest2Pixels, 0, dest2Pixels.length);
+        for (int i = 0; i < destPixels.length; i++) {
+            destPixels[i] |= ~mask;
+        }
+        assertPixels(testName.getMethodName() + "-" + format
+                + "-" + xbrz.scale() + "x", dest2Pixels, destPixels, 0.0);
+    }
+
+    @Test
+    public void tiles() throws Exception {
+        testTiles(xbrz(), "test/open-folder", 7, 5);
+        testTiles(new Xbrz(xbrz().scale(), false), "test/gbamockup", 67, 41);
+    }
+
+    private void testTiles(Xbrz xbrz, String imageName, int tileWidth, int tileHeight) throws IOException {
+        Pixels source = loadPixels(imageName);
+        int srcWidth = source.width;
+        int srcHeight = source.height;
+        int[] srcPixels = source.data;
+
+        final int factor = xbrz.scale();
+        final int halo = Xbrz.TILE_HALO;
+        int[] dest2Pixels = new int[srcPixels.length * factor * factor];
+        for (int tileY = 0; tileY < srcHeight; tileY += tileHeight) {
+            for (int tileX = 0; tileX < srcWidth; tileX += tileWidth) {
+                int width = Math.min(tileWidth, srcWidth - tileX);
+                int height = Math.min(tileHeight, srcHeight - tileY);
+
+                // Only the tile with its halo is available
+                int scanline = width + 2 * halo;
+                int[] tileSource = new int[scanline * (height + 2 * halo)];
+                for (int y = -halo; y < height + halo; y++) {
+                    for (int x = -halo; x < width + halo; x++) {
+                        int srcX = tileX + x;
+                        int srcY = tileY + y;
+                        if (srcX >= 0 && srcX < srcWidth && srcY >= 0 && srcY < srcHeight) {
+                            tileSource[(y + halo) * scanline + x + halo] = srcPixels[srcY * srcWidth + srcX];
+                        }
+                    }
+                }
+
+                int[] tile = xbrz.scaleTile(tileSource, halo * scanline + halo, scanline,
+                        srcWidth, srcHeight, tileX, tileY, width, height, null);
+                for (int y = 0; y < height * factor; y++) {
+                    System.arraycopy(tile, y * width * factor, dest2Pixels,
+                            (tileY * factor + y) * srcWidth * factor + tileX * factor, width * factor);
+                }
+            }
+        }
+        assertMatchesScaled(xbrz, source, dest2Pixels);
+    }
+
+    @Test
+    public void paletteIndexed() throws Exception {
+        testPalette(xbrz(), "test/down-arrow");
+    }
+
+    @Test
+    public void paletteIndexedSquaredDistance() throws Exception {
+        testPalette(Xbrz.squaredDistance(xbrz().scale(), true, new ScalerCfg(),
+                ColorDistance.yCbCr(1)), "test/open-folder");
+    }
+
+    @Test
+    public void paletteIndexedAlternating() throws Exception {
+        Xbrz xbrz = xbrz();
+        for (int i = 0; i < 2; i++) {
+            testPalette(xbrz, "test/down-arrow");
+            testPalette(xbrz, "test/open-folder");
+        }
+    }
+
+    private void testPalette(Xbrz xbrz, String imageName) throws IOException {
+        Pixels source = loadPixels(imageName);
+        int[] srcPixels = source.data;
+
+        Map<Integer, Integer> colors = new LinkedHashMap<>();
+        byte[] indices = new byte[srcPixels.length];
+        for (int i = 0; i < srcPixels.length; i++) {
+            Integer index = colors.computeIfAbsent(srcPixels[i], k -> colors.size());
+            indices[i] = (byte) (int) index;
+        }
+        assertTrue("Palette size: " + colors.size(), colors.size() <= 256);
+        int[] palette = colors.keySet().stream().mapToInt(Integer::intValue).toArray();
+
+        assertMatchesScaled(xbrz, source, xbrz.scaleImage(indices, palette, null,
+                                                          source.width, source.height));
     }
 
     private void testImage(String name) throws IOException {
@@ -96,24 +417,41 @@ public abstract class AbstractScalerTest {
     private void testImage(Xbrz xbrz, String imageName, double deviation) throws IOException {
         final int factor = xbrz.scale();
 
-        BufferedImage source = ImageIO.read(AbstractScalerTest.class.getResource(imageName + ".png"));
-        int srcWidth = source.getWidth();
-        int srcHeight = source.getHeight();
-        int[] srcPixels = new int[srcWidth * srcHeight];
-        source.getRGB(0, 0, srcWidth, srcHeight, srcPixels, 0, srcWidth);
-
-        int destWidth = srcWidth * factor;
-        int destHeight = srcHeight * factor;
+        Pixels source = loadPixels(imageName);
+        int destWidth = source.width * factor;
+        int destHeight = source.height * factor;
         int[] destPixels = new int[destWidth * destHeight];
-        xbrz.scaleImage(srcPixels, destPixels, srcWidth, srcHeight);
+        xbrz.scaleImage(source.data, destPixels, source.width, source.height);
 
-        BufferedImage reference = ImageIO.read(AbstractScalerTest.class.getResource(imageName + "@" + factor + "xbrz.png"));
-        int[] refPixels = new int[reference.getWidth() * reference.getHeight()];
-        reference.getRGB(0, 0, reference.getWidth(), reference.getHeight(), refPixels, 0, reference.getWidth());
+        int[] refPixels = loadReference(imageName, factor).data;
         assertPixels(testName.getMethodName()
                 + "-" + factor + "x", destPixels, refPixels, deviation);
     }
 
+    private static Pixels loadPixels(String imageName) throws IOException {
+        BufferedImage image = ImageIO.read(AbstractScalerTest.class.getResource(imageName + ".png"));
+        int width = image.getWidth();
+        int height = image.getHeight();
+        return new Pixels(imageName, width, height,
+                          image.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static Pixels loadReference(String imageName, int factor) throws IOException {
+        return loadPixels(imageName + "@" + factor + "xbrz");
+    }
+
+    private void assertMatchesScaled(Xbrz xbrz, Pixels source, int[] destPixels) {
+        assertMatchesScaled(xbrz, source, destPixels, 0.0);
+    }
+
+    //compares to the result of scaling the source image with xbrz
+    private void assertMatchesScaled(Xbrz xbrz, Pixels source,
+                                     int[] destPixels, double deviation) {
+        int[] refPixels = xbrz.scaleImage(source.data, null, source.width, source.height);
+        assertPixels(testName.getMethodName() + "-" + xbrz.scale() + "x "
+                + source.name, destPixels, refPixels, deviation);
+    }
+
     private static void assertPixels(String name, int[] destPixels, int[] refPixels, double deviation) {
         assertEquals("pixels size", refPixels.length, destPixels.length);
         int mismatch = 0;
@@ -0,0 +1,77 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import javax.imageio.ImageIO;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Asserts the scaler allocates no heap while scaling an image.  The first
+ * call sizes the workspace buffers, after which the scalar color distance
+ * path shouldn't allocate, interpreted or compiled alike.
+ * <p>
+ * The Vector API distance batch allocates its vectors until C2 compiles it
+ * with escape analysis, which takes an unpredictable number of calls, so it
+ * is not measured here.  The java17 profile runs this test in the execution
+ * without the {@code jdk.incubator.vector} module.</p>
+ */
+public class AllocationTest {
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+
+    private static int[] srcPixels;
+    private static int srcWidth;
+    private static int srcHeight;
+
+    @BeforeClass
+    public static void suiteSetUp() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threadMXBean = (com.sun.management.ThreadMXBean) bean;
+            threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        }
+
+        BufferedImage source = ImageIO.read(AllocationTest.class.getResource("test/gbamockup.png"));
+        srcWidth = source.getWidth();
+        srcHeight = source.getHeight();
+        srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+    }
+
+    @Test
+    public void noAllocation() throws Exception {
+        assumeTrue("Thread allocated memory not supported", threadMXBean != null);
+        assumeTrue("Vector API distances allocate until compiled by C2",
+                   ColorDistanceBatch.of(ColorDistance.yCbCr(1)) == null);
+
+        for (int factor = 2; factor <= 6; factor++) {
+            for (boolean withAlpha : new boolean[] { false, true }) {
+                assertAllocation(new Xbrz(factor, withAlpha), withAlpha);
+            }
+        }
+    }
+
+    private static void assertAllocation(Xbrz xbrz, boolean withAlpha) {
+        int[] trg = new int[Xbrz.targetArraySize(srcWidth, srcHeight, xbrz.factor())];
+        long threadId = Thread.currentThread().getId();
+        // Size the workspace buffers
+        xbrz.scaleImage(srcPixels, trg, srcWidth, srcHeight);
+
+        final int runs = 3;
+        for (int i = 0; i < runs; i++) {
+            long before = threadMXBean.getThreadAllocatedBytes(threadId);
+            xbrz.scaleImage(srcPixels, trg, srcWidth, srcHeight);
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+            assertEquals("Allocated bytes [" + xbrz.factor() + "x, alpha: " + withAlpha
+                    + ", run: " + i + "]", 0, allocated);
+        }
+    }
+
+}
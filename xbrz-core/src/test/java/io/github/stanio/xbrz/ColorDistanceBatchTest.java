@@ -0,0 +1,65 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ColorDistanceBatchTest {
+
+    private static int[] pixels;
+
+    @BeforeClass
+    public static void suiteSetUp() {
+        Random random = new Random(42);
+        pixels = new int[1001];
+        for (int i = 0; i < pixels.length; i++) {
+            switch (random.nextInt(4)) {
+            case 0: pixels[i] = 0xFF000000 | random.nextInt(); break;
+            case 1: pixels[i] = random.nextInt() & 0x00FFFFFF; break;
+            default: pixels[i] = random.nextInt();
+            }
+        }
+    }
+
+    @Test
+    public void yCbCr() {
+        assertBatch(ColorDistance.yCbCr(1));
+    }
+
+    @Test
+    public void yCbCrLumaWeight() {
+        assertBatch(ColorDistance.yCbCr(0.5));
+    }
+
+    @Test
+    public void yCbCrWithAlpha() {
+        assertBatch(ColorDistance.withAlpha(ColorDistance.yCbCr(1)));
+    }
+
+    @Test
+    public void scalarFallback() {
+        assumeTrue("Not a scalar distance run", Boolean.getBoolean("xbrz.test.scalarDistance"));
+
+        assertNull(ColorDistanceBatch.of(ColorDistance.yCbCr(1)));
+    }
+
+    private static void assertBatch(ColorDistance dist) {
+        ColorDistanceBatch batch = ColorDistanceBatch.of(dist);
+        assumeTrue("Batch color distance not available", batch != null);
+
+        final int length = pixels.length / 2;
+        double[] expected = new double[length + 3];
+        for (int i = 0; i < length; i++) {
+            expected[3 + i] = dist.calc(pixels[i], pixels[length + 1 + i]);
+        }
+        double[] actual = new double[length + 3];
+        batch.calc(pixels, 0, length + 1, actual, 3, length);
+        assertArrayEquals(expected, actual, 0.0);
+    }
+
+}
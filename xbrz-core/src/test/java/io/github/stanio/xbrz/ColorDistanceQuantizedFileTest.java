@@ -0,0 +1,63 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColorDistanceQuantizedFileTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Test
+    public void cacheFileRoundTrip() throws Exception {
+        Path cacheFile = tempFolder.getRoot().toPath().resolve("ycbcr-6.bin");
+
+        ColorDistance computed = ColorDistance.quantizedYCbCr(6, cacheFile);
+        assertTrue("cache file created", Files.isRegularFile(cacheFile));
+        Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(0));
+        ColorDistance mapped = ColorDistance.quantizedYCbCr(6, cacheFile);
+        assertEquals("cache file rewritten", 0, Files.getLastModifiedTime(cacheFile).toMillis());
+
+        ColorDistance reference = new ColorDistanceYCbCrQuantized(6);
+        Random random = new Random(6);
+        for (int i = 0; i < 10_000; i++) {
+            int pix1 = random.nextInt();
+            int pix2 = random.nextInt();
+            double expected = reference.calc(pix1, pix2);
+            assertEquals("computed", expected, computed.calc(pix1, pix2), 0.0);
+            assertEquals("mapped", expected, mapped.calc(pix1, pix2), 0.0);
+        }
+    }
+
+    @Test
+    public void invalidCacheFileRecomputed() throws Exception {
+        Path cacheFile = tempFolder.getRoot().toPath().resolve("ycbcr-5.bin");
+        Files.write(cacheFile, new byte[] { 1, 2, 3 });
+
+        ColorDistance dist = ColorDistance.quantizedYCbCr(5, cacheFile);
+
+        assertEquals("white-black", 255.0, dist.calc(0xFFFFFF, 0x000000), 8.0);
+        assertEquals("cache file size", 16 + 17 * 33 * 33 * 2, Files.size(cacheFile));
+    }
+
+    @Test
+    public void symmetric() {
+        ColorDistance dist = ColorDistance.quantizedYCbCr(5);
+        Random random = new Random(5);
+        for (int i = 0; i < 10_000; i++) {
+            int pix1 = random.nextInt();
+            int pix2 = random.nextInt();
+            assertEquals(dist.calc(pix1, pix2), dist.calc(pix2, pix1), 0.0);
+        }
+    }
+
+}
@@ -85,4 +85,13 @@ public class ColorDistanceTest {
                 closeTo(expectedDistance, floatDelta));
     }
 
+    @Test
+    public void calcSquared() {
+        assertThat("squared color distance",
+                colorDistance().calcSquared(Color.decode(pix1).getRGB(),
+                                            Color.decode(pix2).getRGB()),
+                closeTo(expectedDistance * expectedDistance,
+                        floatDelta * (2 * expectedDistance + floatDelta)));
+    }
+
 }
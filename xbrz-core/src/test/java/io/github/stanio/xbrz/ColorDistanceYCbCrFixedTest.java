@@ -0,0 +1,25 @@
+package io.github.stanio.xbrz;
+
+import org.junit.BeforeClass;
+import org.junit.runners.Parameterized.Parameters;
+
+public class ColorDistanceYCbCrFixedTest extends ColorDistanceTest {
+
+    static ColorDistance colorDistance;
+
+    @BeforeClass
+    public static void setUpSuite() {
+        colorDistance = new ColorDistanceYCbCrFixed(1);
+    }
+
+    @Parameters(name = "{index}: {0} - {1}")
+    public static Object[][] data() {
+        // Fixed-point coefficients and 1/16 units
+        Object[][] params = ColorDistanceTest.data();
+        for (Object[] row : params) {
+            row[3] = 0.1;
+        }
+        return params;
+    }
+
+}
@@ -0,0 +1,83 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ColorGradientTest {
+
+    // M / N pairs used by the scalers
+    private static final int[][] GRADIENTS = {
+        { 1, 2 }, { 1, 3 }, { 2, 3 }, { 1, 4 }, { 3, 4 }, { 5, 6 }, { 1, 8 }, { 7, 8 },
+        { 1, 64 }, { 6, 100 }, { 9, 100 }, { 21, 100 }, { 23, 100 }, { 42, 100 },
+        { 45, 100 }, { 68, 100 }, { 86, 100 }, { 97, 100 }, { 7, 256 }
+    };
+
+    @Test
+    public void divideExact() {
+        for (int N = 1; N <= 256; N++) {
+            for (int x = 0; x <= 255 * N; x++) {
+                if (ColorGradientRGB.divide(x, N) != x / N) {
+                    assertEquals(x + " / " + N, x / N, ColorGradientRGB.divide(x, N));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void gradientRGB() {
+        ColorGradient gradient = ColorGradient.gradientRGB();
+        Random random = new Random(1);
+        for (int[] MN : GRADIENTS) {
+            final int M = MN[0], N = MN[1];
+            for (int i = 0; i < 10_000; i++) {
+                int back = random.nextInt();
+                int front = random.nextInt();
+                assertEquals(M + "/" + N, referenceRGB(M, N, back, front),
+                                          gradient.alphaGrad(M, N, back, front));
+            }
+        }
+    }
+
+    @Test
+    public void gradientARGB() {
+        ColorGradient gradient = ColorGradient.gradientARGB();
+        Random random = new Random(2);
+        for (int[] MN : GRADIENTS) {
+            final int M = MN[0], N = MN[1];
+            for (int i = 0; i < 10_000; i++) {
+                int back = random.nextInt();
+                int front = random.nextInt();
+                if (i % 2 == 0) {
+                    // same alpha
+                    front = (back & 0xFF000000) | (front & 0xFFFFFF);
+                }
+                assertEquals(M + "/" + N, referenceARGB(M, N, back, front),
+                                          gradient.alphaGrad(M, N, back, front));
+            }
+        }
+    }
+
+    private static int referenceRGB(int M, int N, int pixBack, int pixFront) {
+        int r = (Color.getRed(pixFront) * M + Color.getRed(pixBack) * (N - M)) / N;
+        int g = (Color.getGreen(pixFront) * M + Color.getGreen(pixBack) * (N - M)) / N;
+        int b = (Color.getBlue(pixFront) * M + Color.getBlue(pixBack) * (N - M)) / N;
+        return Color.makePixel(r, g, b);
+    }
+
+    private static int referenceARGB(int M, int N, int pixBack, int pixFront) {
+        int weightFront = Color.getAlpha(pixFront) * M;
+        int weightBack = Color.getAlpha(pixBack) * (N - M);
+        int weightSum = weightFront + weightBack;
+        if (weightSum == 0)
+            return 0;
+
+        int r = (Color.getRed(pixFront) * weightFront + Color.getRed(pixBack) * weightBack) / weightSum;
+        int g = (Color.getGreen(pixFront) * weightFront + Color.getGreen(pixBack) * weightBack) / weightSum;
+        int b = (Color.getBlue(pixFront) * weightFront + Color.getBlue(pixBack) * weightBack) / weightSum;
+        return Color.makePixel(weightSum / N, r, g, b);
+    }
+
+}
@@ -1,7 +1,78 @@
 package io.github.stanio.xbrz;
 
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
 public class Kernel_3x3Test {
 
-    // TODO: ...
+    private Kernel_3x3 ker3;
+
+    @Before
+    public void setUp() {
+        Kernel_4x4 ker4 = new Kernel_4x4();
+        ker4.a = 0xA; ker4.b = 0xB; ker4.c = 0xC;
+        ker4.e = 0xD; ker4.f = 0xE; ker4.g = 0xF;
+        ker4.i = 0x1; ker4.j = 0x2; ker4.k = 0x3;
+        ker3 = ker4.kernel_3x3();
+        ker3.load();
+    }
+
+    @Test
+    public void rotation0() {
+        ker3.rotDeg(RotationDegree.ROT_0);
+        assertKernel(0xA, 0xB, 0xC,
+                     0xD, 0xE, 0xF,
+                     0x1, 0x2, 0x3);
+    }
+
+    @Test
+    public void rotation90() {
+        ker3.rotDeg(RotationDegree.ROT_90);
+        assertKernel(0x1, 0xD, 0xA,
+                     0x2, 0xE, 0xB,
+                     0x3, 0xF, 0xC);
+    }
+
+    @Test
+    public void rotation180() {
+        ker3.rotDeg(RotationDegree.ROT_180);
+        assertKernel(0x3, 0x2, 0x1,
+                     0xF, 0xE, 0xD,
+                     0xC, 0xB, 0xA);
+    }
+
+    @Test
+    public void rotation270() {
+        ker3.rotDeg(RotationDegree.ROT_270);
+        assertKernel(0xC, 0xF, 0x3,
+                     0xB, 0xE, 0x2,
+                     0xA, 0xD, 0x1);
+    }
+
+    @Test
+    public void blendInfoRotation() {
+        // topL: 1, topR: 2, bottomR: 3, bottomL: 0
+        byte blend = (byte) (1 | 2 << 2 | 3 << 4);
+        assertEquals("ROT_0",   0b00_11_10_01, BlendInfo.rotate(blend, RotationDegree.ROT_0)   & 0xFF);
+        assertEquals("ROT_90",  0b11_10_01_00, BlendInfo.rotate(blend, RotationDegree.ROT_90)  & 0xFF);
+        assertEquals("ROT_180", 0b10_01_00_11, BlendInfo.rotate(blend, RotationDegree.ROT_180) & 0xFF);
+        assertEquals("ROT_270", 0b01_00_11_10, BlendInfo.rotate(blend, RotationDegree.ROT_270) & 0xFF);
+    }
+
+    private void assertKernel(int a, int b, int c,
+                              int d, int e, int f,
+                              int g, int h, int i) {
+        assertEquals("a", a, ker3.a());
+        assertEquals("b", b, ker3.b());
+        assertEquals("c", c, ker3.c());
+        assertEquals("d", d, ker3.d());
+        assertEquals("e", e, ker3.e());
+        assertEquals("f", f, ker3.f());
+        assertEquals("g", g, ker3.g());
+        assertEquals("h", h, ker3.h());
+        assertEquals("i", i, ker3.i());
+    }
 
 }
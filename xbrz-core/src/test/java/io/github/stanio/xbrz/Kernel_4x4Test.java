@@ -1,7 +1,66 @@
 package io.github.stanio.xbrz;
 
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
 public class Kernel_4x4Test {
 
-    // TODO: ...
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 5;
+
+    private static int[] sourcePixels() {
+        int[] src = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = 0xFF000000 | i * 0x010203;
+        }
+        return src;
+    }
+
+    @Test
+    public void interiorDuplicate() throws Exception {
+        assertInteriorReads(false, 0, WIDTH);
+    }
+
+    @Test
+    public void interiorTransparent() throws Exception {
+        assertInteriorReads(true, 0, WIDTH);
+    }
+
+    @Test
+    public void interiorColumnRange() throws Exception {
+        assertInteriorReads(false, 2, 5);
+        assertInteriorReads(true, 2, 5);
+    }
+
+    private static void assertInteriorReads(boolean withAlpha, int xFirst, int xLast) {
+        int[] src = sourcePixels();
+        Kernel_4x4 checked = new Kernel_4x4();
+        checked.init(src, WIDTH, HEIGHT, withAlpha);
+        checked.origin(xFirst, WIDTH, 0, xFirst, xLast, 0);
+        Kernel_4x4 interior = new Kernel_4x4();
+        interior.init(src, WIDTH, HEIGHT, withAlpha);
+        interior.origin(xFirst, WIDTH, 0, xFirst, xLast, 0);
+
+        for (int y = -1; y <= HEIGHT; y++) {
+            checked.positionY(y);
+            interior.positionY(y);
+            boolean rowsInside = !withAlpha || (y >= 1 && y + 2 < HEIGHT);
+            assertEquals("interiorFirst @ " + y,
+                    rowsInside ? -xFirst - 2 : 0, interior.interiorFirst());
+            assertEquals("interiorEnd @ " + y,
+                    rowsInside ? WIDTH - xFirst - 2 : 0, interior.interiorEnd());
+
+            for (int x = interior.interiorFirst(); x < interior.interiorEnd(); x++) {
+                checked.readDhlp(x);
+                interior.readDhlpInterior(x);
+                String pos = "(" + x + ", " + y + ")";
+                assertEquals("d " + pos, checked.d, interior.d);
+                assertEquals("h " + pos, checked.h, interior.h);
+                assertEquals("l " + pos, checked.l, interior.l);
+                assertEquals("p " + pos, checked.p, interior.p);
+            }
+        }
+    }
 
 }
@@ -0,0 +1,18 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeFalse;
+
+import org.junit.Test;
+
+public class MemorySegmentXbrzTest {
+
+    @Test
+    public void unsupportedRuntime() throws Exception {
+        assumeFalse("Memory segments supported", MemorySegmentXbrz.isSupported());
+
+        assertFalse("Memory segment scaler present",
+                    MemorySegmentXbrz.of(new Xbrz(2)).isPresent());
+    }
+
+}
@@ -1,7 +1,51 @@
 package io.github.stanio.xbrz;
 
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
 public class OutputMatrixTest {
 
-    // TODO: ...
-    
+    @Test
+    public void cornerPatternRotations() throws Exception {
+        // 3x corner blends the single bottom-right (2, 2) pixel, rotated
+        // clock-wise: (0, 2), (0, 0), (2, 0)
+        int outWidth = 7;
+        int[][] expected = { { 2 * outWidth + 2 },
+                             { 0 * outWidth + 2 },
+                             { 0 * outWidth + 0 },
+                             { 2 * outWidth + 0 } };
+
+        OutputMatrix matrix = new OutputMatrix();
+        matrix.init(Scaler.forFactor(3, false), new int[outWidth * 3], outWidth);
+        for (RotationDegree rotDeg : RotationDegree.values()) {
+            matrix.rotDeg(rotDeg);
+            assertArrayEquals(rotDeg.toString(),
+                    expected[rotDeg.ordinal()], matrix.pattern(Scaler.CORNER));
+        }
+    }
+
+    @Test
+    public void patternWeights() throws Exception {
+        // 3x line shallow: three blends and a set
+        OutputMatrix matrix = new OutputMatrix();
+        matrix.init(Scaler.forFactor(3, true), new int[3 * 3], 3);
+        assertArrayEquals(new int[] { 1, 4, 1, 4, 3, 4, 1, 1 },
+                          matrix.weights(Scaler.LINE_SHALLOW));
+    }
+
+    @Test
+    public void reinitWithOtherWidth() throws Exception {
+        OutputMatrix matrix = new OutputMatrix();
+        Scaler scaler = Scaler.forFactor(2, false);
+        matrix.init(scaler, new int[4 * 2], 4);
+        matrix.rotDeg(RotationDegree.ROT_0);
+        assertArrayEquals("outWidth 4", new int[] { 4 + 1 },
+                          matrix.pattern(Scaler.LINE_DIAGONAL));
+
+        matrix.init(scaler, new int[2 * 2], 2);
+        assertArrayEquals("outWidth 2", new int[] { 2 + 1 },
+                          matrix.pattern(Scaler.LINE_DIAGONAL));
+    }
+
 }
@@ -0,0 +1,59 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class PixelFormatTest {
+
+    private static final int[] PIXELS = { 0x80123456, 0xFFABCDEF };
+
+    @Test
+    public void rgba() {
+        assertFormat(PixelFormat.RGBA, 0x12, 0x34, 0x56, 0x80, 0xAB, 0xCD, 0xEF, 0xFF);
+    }
+
+    @Test
+    public void bgra() {
+        assertFormat(PixelFormat.BGRA, 0x56, 0x34, 0x12, 0x80, 0xEF, 0xCD, 0xAB, 0xFF);
+    }
+
+    @Test
+    public void abgr() {
+        assertFormat(PixelFormat.ABGR, 0x80, 0x56, 0x34, 0x12, 0xFF, 0xEF, 0xCD, 0xAB);
+    }
+
+    @Test
+    public void argb() {
+        assertFormat(PixelFormat.ARGB, 0x80, 0x12, 0x34, 0x56, 0xFF, 0xAB, 0xCD, 0xEF);
+    }
+
+    @Test
+    public void rgb() {
+        assertFormat(PixelFormat.RGB, 0x12, 0x34, 0x56, 0xAB, 0xCD, 0xEF);
+    }
+
+    @Test
+    public void bgr() {
+        assertFormat(PixelFormat.BGR, 0x56, 0x34, 0x12, 0xEF, 0xCD, 0xAB);
+    }
+
+    private static void assertFormat(PixelFormat format, int... expected) {
+        byte[] bytes = new byte[1 + PIXELS.length * format.bytesPerPixel()];
+        format.fromARGB(PIXELS, 0, bytes, 1, PIXELS.length);
+        byte[] expectedBytes = new byte[expected.length + 1];
+        for (int i = 0; i < expected.length; i++) {
+            expectedBytes[i + 1] = (byte) expected[i];
+        }
+        assertArrayEquals("bytes", expectedBytes, bytes);
+
+        int[] pixels = new int[PIXELS.length];
+        format.toARGB(bytes, 1, pixels, 0, pixels.length);
+        int[] expectedPixels = PIXELS.clone();
+        if (format.bytesPerPixel() == 3) {
+            expectedPixels[0] |= 0xFF000000;
+        }
+        assertArrayEquals("pixels", expectedPixels, pixels);
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.github.stanio.xbrz;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class StreamingXbrzTest {
+
+    @Test
+    public void fullPicture() throws Exception {
+        BufferedImage source = ImageIO.read(StreamingXbrzTest.class.getResource("test/gbamockup.png"));
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int[] srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+
+        assertStreaming(new Xbrz(3, false), srcPixels, srcWidth, srcHeight);
+    }
+
+    @Test
+    public void someAlpha() throws Exception {
+        BufferedImage source = ImageIO.read(StreamingXbrzTest.class.getResource("test/open-folder.png"));
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int[] srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+
+        for (int factor = 2; factor <= 6; factor++) {
+            assertStreaming(new Xbrz(factor), srcPixels, srcWidth, srcHeight);
+        }
+    }
+
+    @Test
+    public void fewRows() throws Exception {
+        Random random = new Random(7);
+        int srcWidth = 9;
+        for (int srcHeight = 1; srcHeight <= 5; srcHeight++) {
+            int[] srcPixels = new int[srcWidth * srcHeight];
+            for (int i = 0; i < srcPixels.length; i++) {
+                srcPixels[i] = random.nextBoolean() ? 0xFF203040 : random.nextInt();
+            }
+            assertStreaming(new Xbrz(2), srcPixels, srcWidth, srcHeight);
+            assertStreaming(new Xbrz(4, false), srcPixels, srcWidth, srcHeight);
+        }
+    }
+
+    @Test
+    public void emptyRows() {
+        for (Xbrz xbrz : new Xbrz[] { new Xbrz(2), new Xbrz(3, false) }) {
+            int[] nextRow = new int[1];
+            StreamingXbrz scaler = new StreamingXbrz(xbrz, 0, 3, (pixels, y) -> {
+                assertEquals("target row", nextRow[0], y);
+                assertEquals("target pixels", 0, pixels.length);
+                nextRow[0] += xbrz.factor();
+            });
+            for (int y = 0; y < 3; y++) {
+                scaler.push(new int[0], 0);
+            }
+            assertTrue("complete", scaler.isComplete());
+            assertEquals("target rows", 3 * xbrz.factor(), nextRow[0]);
+        }
+    }
+
+    @Test
+    public void reuseWorkspace() throws Exception {
+        BufferedImage source = ImageIO.read(StreamingXbrzTest.class.getResource("test/open-folder.png"));
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int[] srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+
+        Xbrz.Workspace workspace = new Xbrz.Workspace();
+        assertStreaming(new Xbrz(3), workspace, srcPixels, srcWidth, srcHeight);
+        assertStreaming(new Xbrz(2, false), workspace, srcPixels, srcWidth, srcHeight);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void tooManyRows() {
+        StreamingXbrz scaler = new StreamingXbrz(new Xbrz(2), 3, 1, (pixels, y) -> { });
+        scaler.push(new int[3], 0);
+        assertTrue("complete", scaler.isComplete());
+        scaler.push(new int[3], 0);
+    }
+
+    private static void assertStreaming(Xbrz xbrz, int[] srcPixels, int srcWidth, int srcHeight) {
+        assertStreaming(xbrz, new Xbrz.Workspace(), srcPixels, srcWidth, srcHeight);
+    }
+
+    private static void assertStreaming(Xbrz xbrz, Xbrz.Workspace workspace,
+                                        int[] srcPixels, int srcWidth, int srcHeight) {
+        int[] expected = xbrz.scaleImage(srcPixels, null, srcWidth, srcHeight);
+
+        int trgWidth = srcWidth * xbrz.factor();
+        int[] actual = new int[expected.length];
+        int[] nextRow = new int[1];
+        StreamingXbrz scaler = new StreamingXbrz(xbrz, workspace, srcWidth, srcHeight, (pixels, y) -> {
+            assertEquals("target row", nextRow[0], y);
+            System.arraycopy(pixels, 0, actual, y * trgWidth, trgWidth * xbrz.factor());
+            nextRow[0] += xbrz.factor();
+        });
+        for (int y = 0; y < srcHeight; y++) {
+            scaler.push(srcPixels, y * srcWidth);
+        }
+        assertTrue("complete", scaler.isComplete());
+        assertArrayEquals(expected, actual);
+    }
+
+}
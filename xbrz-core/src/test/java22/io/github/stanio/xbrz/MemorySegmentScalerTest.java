@@ -0,0 +1,68 @@
+package io.github.stanio.xbrz;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class MemorySegmentScalerTest {
+
+    @Test
+    public void supported() throws Exception {
+        assertTrue("Memory segments supported", MemorySegmentXbrz.isSupported());
+        assertTrue("Memory segment scaler present", MemorySegmentXbrz.of(new Xbrz(2)).isPresent());
+    }
+
+    @Test
+    public void nativeSegments() throws Exception {
+        assertSegments(ByteOrder.nativeOrder());
+    }
+
+    @Test
+    public void bigEndianSegments() throws Exception {
+        assertSegments(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static void assertSegments(ByteOrder byteOrder) throws Exception {
+        BufferedImage source = ImageIO.read(MemorySegmentScalerTest.class.getResource("test/open-folder.png"));
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int[] srcPixels = source.getRGB(0, 0, srcWidth, srcHeight, null, 0, srcWidth);
+
+        Xbrz xbrz = new Xbrz(3, true);
+        int[] expected = xbrz.scaleImage(srcPixels, null, srcWidth, srcHeight);
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment src = arena.allocate(4L * srcPixels.length);
+            MemorySegment trg = arena.allocate(4L * expected.length);
+            MemorySegment.copy(srcPixels, 0, src, JAVA_INT_UNALIGNED.withOrder(byteOrder), 0, srcPixels.length);
+
+            MemorySegmentXbrz.of(xbrz).get().scaleImage(src, trg, srcWidth, srcHeight, byteOrder);
+
+            int[] actual = new int[expected.length];
+            MemorySegment.copy(trg, JAVA_INT_UNALIGNED.withOrder(byteOrder), 0, actual, 0, actual.length);
+            assertArrayEquals(byteOrder.toString(), expected, actual);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notSegment() throws Exception {
+        MemorySegmentXbrz.of(new Xbrz(2)).get()
+                .scaleImage(new int[4], MemorySegment.ofArray(new int[16]), 2, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void targetTooSmall() throws Exception {
+        MemorySegmentXbrz.of(new Xbrz(2)).get()
+                .scaleImage(MemorySegment.ofArray(new int[4]), MemorySegment.ofArray(new int[15]), 2, 2);
+    }
+
+}